@@ -0,0 +1,313 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/** Timing benchmarks for Gitlet's engines, on synthetic data built in
+ *  memory. Run "java gitlet.Benchmark [NAME ...]" (or "make bench") to run
+ *  the benchmarks named, or all of them. Each case is run a few times and
+ *  the best time is reported, so that the JIT has warmed up.
+ *  @author Ellsa Fiorenza
+ */
+public class Benchmark {
+
+    /** The names of all benchmarks. */
+    private static final String[] ALL = {
+        "merge-base", "codec", "diff", "bloom"
+    };
+
+    /** Run the benchmarks named in ARGS, or all of them. */
+    public static void main(String... args) {
+        List<String> names = Arrays.asList(args.length == 0 ? ALL : args);
+        for (String name : names) {
+            switch (name) {
+            case "merge-base":
+                mergeBase();
+                break;
+            case "codec":
+                codecs();
+                break;
+            case "diff":
+                diffs();
+                break;
+            case "bloom":
+                bloom();
+                break;
+            default:
+                System.err.printf("Unknown benchmark: %s%n", name);
+                System.exit(1);
+            }
+        }
+    }
+
+    /** Compare MergeBase with the first-parent search Commands used
+     *  before it, on histories of 10,000 and 100,000 commits where two
+     *  branches split 1,000 commits back. Every 50th commit on the
+     *  main line merges a short side branch. */
+    private static void mergeBase() {
+        System.out.println("merge-base: split point of two branches");
+        for (int n : new int[] { 10_000, 100_000 }) {
+            CommitGraph graph = new CommitGraph();
+            String[] tips = history(graph, n, 1_000);
+            MergeBase engine = new MergeBase(graph);
+            String[] found = new String[2];
+            long fast = time(REPEATS,
+                             () -> found[0] = engine.best(tips[0], tips[1]));
+            long slow = time(REPEATS, () -> found[1] =
+                             firstParentSplit(graph, tips[0], tips[1]));
+            if (!found[0].equals(found[1])) {
+                throw new AssertionError("split points differ");
+            }
+            System.out.printf("  %,7d commits: MergeBase %8.2f ms, "
+                              + "first-parent lists %8.2f ms%n",
+                              n, fast / 1e6, slow / 1e6);
+        }
+    }
+
+    /** Report, for each Codec and for a few kinds of text, the size of
+     *  the stored objects relative to their contents and the rate at
+     *  which contents are encoded and decoded. */
+    private static void codecs() {
+        System.out.println("codec: stored size and throughput");
+        HashMap<String, byte[]> corpora = new LinkedHashMap<>();
+        corpora.put("source", sources());
+        corpora.put("log", logLines(1 << 21));
+        byte[] noise = new byte[1 << 21];
+        new Random(0).nextBytes(noise);
+        corpora.put("random", noise);
+        for (Map.Entry<String, byte[]> e : corpora.entrySet()) {
+            byte[] contents = e.getValue();
+            for (Codec c : new Codec[] { Codec.RAW, Codec.DEFLATE }) {
+                byte[][] stored = new byte[1][];
+                long write = time(REPEATS,
+                                  () -> stored[0] = c.encode(contents));
+                long read = time(REPEATS, () -> Codec.decode(stored[0]));
+                System.out.printf("  %-6s %,10d bytes %-7s: ratio %5.3f, "
+                                  + "write %7.1f MB/s, read %7.1f MB/s%n",
+                                  e.getKey(), contents.length, c.name(),
+                                  (double) stored[0].length
+                                  / contents.length,
+                                  contents.length / (write / 1e3),
+                                  contents.length / (read / 1e3));
+            }
+        }
+    }
+
+    /** Return the Java sources in the current directory, repeated to at
+     *  least 2 MB, or generated text if there are none. */
+    private static byte[] sources() {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        List<String> names = Utils.plainFilenamesIn(".");
+        while (names != null && result.size() < 1 << 21) {
+            int size = result.size();
+            for (String name : names) {
+                if (name.endsWith(".java")) {
+                    byte[] text = Utils.readContents(new File(name));
+                    result.write(text, 0, text.length);
+                }
+            }
+            if (result.size() == size) {
+                break;
+            }
+        }
+        return result.size() > 0 ? result.toByteArray() : logLines(1 << 21);
+    }
+
+    /** Return about N bytes of log-like lines. */
+    private static byte[] logLines(int n) {
+        Random rand = new Random(n);
+        String[] words = { "commit", "merge", "branch", "file", "staged",
+                           "removed", "conflict", "tree", "blob", "head" };
+        StringBuilder result = new StringBuilder();
+        while (result.length() < n) {
+            result.append(String.format("%08x %s %s %d%n",
+                                        rand.nextInt(),
+                                        words[rand.nextInt(words.length)],
+                                        words[rand.nextInt(words.length)],
+                                        rand.nextInt(100000)));
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Time Diff on files of 10,000 and 100,000 lines against versions
+     *  with one line in a hundred changed, and against unrelated files of
+     *  the same length, the worst case. */
+    private static void diffs() {
+        System.out.println("diff: line diffs of two versions of a file");
+        for (int n : new int[] { 10_000, 100_000 }) {
+            Random rand = new Random(n);
+            String[] a = new String[n], edited = new String[n];
+            String[] other = new String[n];
+            for (int i = 0; i < n; i += 1) {
+                a[i] = "line " + rand.nextInt(n) + "\n";
+                other[i] = "other " + rand.nextInt(n) + "\n";
+                edited[i] = rand.nextInt(100) == 0 ? "changed\n" : a[i];
+            }
+            long similar = time(REPEATS, () -> Diff.diff(a, edited));
+            long different = time(REPEATS, () -> Diff.diff(a, other));
+            System.out.printf("  %,7d lines: 1%% changed %8.2f ms, "
+                              + "all changed %8.2f ms%n",
+                              n, similar / 1e6, different / 1e6);
+        }
+    }
+
+    /** Time finding the commits that changed one file in a history of
+     *  100,000 commits, each changing 3 of 1,000 files in 20 directories:
+     *  by diffing the file map of every commit with its parent's, as log
+     *  did before changed-paths filters, and by diffing only the commits
+     *  whose filter, built as CommitGraph builds it, may contain the
+     *  file. */
+    private static void bloom() {
+        System.out.println("bloom: commits that changed a file");
+        int n = 100_000, files = 1_000;
+        Random rand = new Random(n);
+        HashMap<String, String> tip = new HashMap<>();
+        for (int f = 0; f < files; f += 1) {
+            tip.put(path(f), "0");
+        }
+        String[][] changes = new String[n][], before = new String[n][];
+        byte[][] filters = new byte[n][];
+        for (int k = 1; k < n; k += 1) {
+            HashSet<String> paths = new HashSet<>();
+            changes[k] = new String[3];
+            before[k] = new String[3];
+            for (int i = 0; i < changes[k].length; i += 1) {
+                String path = path(rand.nextInt(files));
+                changes[k][i] = path;
+                before[k][i] = tip.put(path, Integer.toString(k));
+                paths.add(path);
+                paths.add(path.substring(0, path.indexOf('/')));
+            }
+            filters[k] = BloomFilter.build(paths);
+        }
+        for (String path : new String[] { path(7), "d3" }) {
+            List<List<Integer>> found = new ArrayList<>();
+            long slow = time(REPEATS, () -> found.add(
+                touching(tip, changes, before, null, path)));
+            long fast = time(REPEATS, () -> found.add(
+                touching(tip, changes, before, filters,
+                         path)));
+            if (!found.get(0).equals(found.get(found.size() - 1))) {
+                throw new AssertionError("commits found differ");
+            }
+            System.out.printf("  %-12s %,4d commits: all diffed %8.2f ms, "
+                              + "filtered %8.2f ms%n", path,
+                              found.get(0).size(), slow / 1e6, fast / 1e6);
+        }
+    }
+
+    /** Return the path of file number F in the bloom benchmark. */
+    private static String path(int f) {
+        return "d" + f % 20 + "/file" + f + ".txt";
+    }
+
+    /** Return the commits, newest first, that changed PATH, a file or
+     *  directory, in the history whose last commit has files TIP and in
+     *  which commit K changed the files CHANGES[K] from the versions
+     *  BEFORE[K]. Each commit's file map is diffed with its parent's,
+     *  unless FILTERS is not null and the commit's filter rules PATH
+     *  out. */
+    private static List<Integer> touching(HashMap<String, String> tip,
+                                          String[][] changes,
+                                          String[][] before,
+                                          byte[][] filters, String path) {
+        ArrayList<Integer> result = new ArrayList<>();
+        HashMap<String, String> files = new HashMap<>(tip);
+        for (int k = changes.length - 1; k > 0; k -= 1) {
+            if (filters != null
+                && !BloomFilter.mayContain(filters[k], path)) {
+                undo(files, changes, before, k);
+                continue;
+            }
+            HashMap<String, String> parent = new HashMap<>(files);
+            undo(parent, changes, before, k);
+            for (Map.Entry<String, String> e : files.entrySet()) {
+                String name = e.getKey();
+                if (!e.getValue().equals(parent.get(name))
+                    && (name.equals(path) || name.startsWith(path + "/"))) {
+                    result.add(k);
+                    break;
+                }
+            }
+            files = parent;
+        }
+        return result;
+    }
+
+    /** Turn FILES, the files of commit K in the bloom benchmark's history
+     *  CHANGES and BEFORE, into those of its parent. */
+    private static void undo(HashMap<String, String> files,
+                             String[][] changes, String[][] before, int k) {
+        for (int i = changes[k].length - 1; i >= 0; i -= 1) {
+            files.put(changes[k][i], before[k][i]);
+        }
+    }
+
+    /** Fill GRAPH with a history of about N commits ending in two branches
+     *  that split SPLIT commits from the end, and return their tips. */
+    private static String[] history(CommitGraph graph, int n, int split) {
+        String main = null;
+        int k;
+        for (k = 0; k < n - 2 * split; k += 1) {
+            String[] parents = main == null ? new String[0]
+                : new String[] { main };
+            if (k % 50 == 49) {
+                String side = Utils.sha1("side" + k);
+                graph.insert(side, parents, k);
+                parents = new String[] { main, side };
+            }
+            main = Utils.sha1("main" + k);
+            graph.insert(main, parents, k);
+        }
+        String[] tips = { main, main };
+        for (int i = 0; i < split; i += 1, k += 1) {
+            for (int b = 0; b < 2; b += 1) {
+                String id = Utils.sha1("branch" + b + ":" + k);
+                graph.insert(id, new String[] { tips[b] }, k);
+                tips[b] = id;
+            }
+        }
+        return tips;
+    }
+
+    /** Return the split point of A and B in GRAPH as Commands found it
+     *  before MergeBase: the first of B's first-parent ancestors that is
+     *  in a list of A's. */
+    private static String firstParentSplit(CommitGraph graph, String a,
+                                           String b) {
+        ArrayList<String> ours = new ArrayList<>();
+        for (String c = a; c != null; c = graph.parent(c)) {
+            ours.add(c);
+        }
+        for (String c = b; c != null; c = graph.parent(c)) {
+            if (ours.contains(c)) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    /** Return the shortest time in nanoseconds that BODY took over N
+     *  runs. */
+    private static long time(int n, Runnable body) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < n; i += 1) {
+            long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /** Number of runs of each case. */
+    private static final int REPEATS = 5;
+}
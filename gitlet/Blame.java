@@ -0,0 +1,273 @@
+package gitlet;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** Finds the commit that last changed each line of a file. Starting from
+ *  the file in some commit, the lines not yet accounted for are carried
+ *  back from commit to commit, as line numbers in each commit's version
+ *  of the file: to a parent with the very same version, all of them; to
+ *  other parents, those that a Diff shows to be unchanged. Lines that no
+ *  parent had are the commit's own. Commits are visited newest
+ *  generation first, so each is visited once, with the lines of all its
+ *  children, and the walk ends as soon as every line is accounted for.
+ *  Lines are written out as soon as they and all lines before them are,
+ *  and only the lines still being carried are kept, so memory depends on
+ *  the size of the file, not the length of its history.
+ *  @author Ellsa Fiorenza
+ */
+class Blame {
+
+    /** Write to OUT each line of the file PATH in the commit whose UID is
+     *  START, preceded by the commit that last changed it. PATH must be a
+     *  file of START. */
+    static void write(PrintWriter out, String start, String path) {
+        new Blame(out, start, path).run();
+    }
+
+    /** A blame of PATH in the commit START, written to OUT. */
+    private Blame(PrintWriter out, String start, String path) {
+        _out = out;
+        _path = path;
+        _graph = CommitGraph.get();
+        _queue = new PriorityQueue<>(
+            Comparator.comparingInt((String id) -> -_graph.generation(id))
+            .thenComparing(Comparator.naturalOrder()));
+        String blob = blob(start);
+        _lines = Diff.lines(text(blob));
+        _owners = new String[_lines.length];
+        _left = _lines.length;
+        Pending all = pending(start, blob);
+        for (int i = 0; i < _lines.length; i += 1) {
+            all.add(i, i);
+        }
+    }
+
+    /** Account for every line, writing them out as they are. */
+    private void run() {
+        while (_left > 0) {
+            String id = _queue.poll();
+            Pending mine = _pending.remove(id);
+            String[] parents = _graph.parents(id);
+            if (parents.length > 0 && !_graph.mayChange(id, _path)) {
+                pending(parents[0], mine.blob).addAll(mine);
+                continue;
+            }
+            String[] blobs = new String[parents.length];
+            boolean passed = false;
+            for (int i = 0; i < parents.length && !passed; i += 1) {
+                blobs[i] = blob(parents[i]);
+                if (mine.blob.equals(blobs[i])) {
+                    pending(parents[i], blobs[i]).addAll(mine);
+                    passed = true;
+                }
+            }
+            if (passed) {
+                continue;
+            }
+            String[] lines = null;
+            for (int i = 0; i < parents.length && !mine.isEmpty(); i += 1) {
+                if (blobs[i] != null) {
+                    if (lines == null) {
+                        lines = Diff.lines(text(mine.blob));
+                    }
+                    mine = carry(mine, lines, parents[i], blobs[i]);
+                }
+            }
+            for (int k = 0; k < mine.size(); k += 1) {
+                _owners[mine.target(k)] = id;
+                _left -= 1;
+            }
+            flush();
+        }
+        flush();
+    }
+
+    /** Carry the lines of MINE, whose version of the file has LINES, that
+     *  are unchanged from the parent PARENT's version, whose UID is BLOB,
+     *  to that parent, and return the lines that remain. */
+    private Pending carry(Pending mine, String[] lines, String parent,
+                          String blob) {
+        String[] theirs = Diff.lines(text(blob));
+        List<Diff.Hunk> hunks = Diff.diff(theirs, lines);
+        Pending rest = new Pending(mine.blob);
+        Pending passed = null;
+        mine.sort();
+        int h = 0, offset = 0;
+        for (int k = 0; k < mine.size(); k += 1) {
+            int line = mine.line(k);
+            while (h < hunks.size() && hunks.get(h).bEnd() <= line) {
+                offset = hunks.get(h).bEnd() - hunks.get(h).aEnd();
+                h += 1;
+            }
+            if (h < hunks.size() && hunks.get(h).bStart() <= line) {
+                rest.add(line, mine.target(k));
+            } else {
+                if (passed == null) {
+                    passed = pending(parent, blob);
+                }
+                passed.add(line - offset, mine.target(k));
+            }
+        }
+        return rest;
+    }
+
+    /** Return the lines carried to the commit whose UID is ID, whose
+     *  version of the file has UID BLOB, queueing it if it is new. */
+    private Pending pending(String id, String blob) {
+        Pending result = _pending.get(id);
+        if (result == null) {
+            result = new Pending(blob);
+            _pending.put(id, result);
+            _queue.add(id);
+        }
+        return result;
+    }
+
+    /** Write out the lines whose commits are known and that follow all
+     *  lines already written. */
+    private void flush() {
+        for (; _written < _lines.length && _owners[_written] != null;
+             _written += 1) {
+            String id = _owners[_written];
+            String line = _lines[_written];
+            if (line.endsWith("\n")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            _out.printf("%s (%s %" + width() + "d) %s%n",
+                        id.substring(0, ABBREV), date(id), _written + 1,
+                        line);
+        }
+    }
+
+    /** Return the width of the largest line number. */
+    private int width() {
+        return Integer.toString(_lines.length).length();
+    }
+
+    /** Return the date of the commit whose UID is ID. */
+    private String date(String id) {
+        String result = _dates.get(id);
+        if (result == null) {
+            result = commit(id).getDateTime();
+            _dates.put(id, result);
+        }
+        return result;
+    }
+
+    /** Return the UID of the file's version in the commit whose UID is ID,
+     *  or null if the commit does not have it. */
+    private String blob(String id) {
+        String tree = commit(id).getTree();
+        int k = _path.lastIndexOf(Tree.SEPARATOR);
+        String dir = tree == null || k < 0 ? tree
+            : Tree.lookup(tree, _path.substring(0, k));
+        Tree dirTree = dir == null ? null : ObjectStore.readTree(dir);
+        Tree.Entry e = dirTree == null ? null
+            : dirTree.entries().get(_path.substring(k + 1));
+        return e == null || e.isTree() ? null : e.id();
+    }
+
+    /** Return the commit whose UID is ID. */
+    private static Commit commit(String id) {
+        Commit result = ObjectStore.readCommit(id);
+        if (result == null) {
+            throw Utils.error("missing commit %s", id);
+        }
+        return result;
+    }
+
+    /** Return the contents of the blob whose UID is ID as text. */
+    private static String text(String id) {
+        return new String(ObjectStore.readBlob(id), StandardCharsets.UTF_8);
+    }
+
+    /** Number of digits of a commit UID written. */
+    private static final int ABBREV = 8;
+
+    /** Where the lines are written. */
+    private final PrintWriter _out;
+
+    /** Path of the file. */
+    private final String _path;
+
+    /** The commit graph. */
+    private final CommitGraph _graph;
+
+    /** The lines of the file. */
+    private final String[] _lines;
+
+    /** The commit that last changed each line, once known. */
+    private final String[] _owners;
+
+    /** Number of lines written so far. */
+    private int _written;
+
+    /** Number of lines whose commit is not known yet. */
+    private int _left;
+
+    /** Lines being carried, by the UID of the commit they are at. */
+    private final HashMap<String, Pending> _pending = new HashMap<>();
+
+    /** Commits with lines being carried, newest generation first. */
+    private final PriorityQueue<String> _queue;
+
+    /** Dates of commits, by UID. */
+    private final HashMap<String, String> _dates = new HashMap<>();
+
+    /** Lines carried to one commit: pairs of a line number in the
+     *  commit's version of the file and the number of the line it became
+     *  in the file being blamed. */
+    private static class Pending {
+        /** No lines, of the version of the file whose UID is BLOB. */
+        Pending(String blob) {
+            this.blob = blob;
+        }
+
+        /** Add line LINE, which became line TARGET. */
+        void add(int line, int target) {
+            pairs.add(new int[] { line, target });
+        }
+
+        /** Add all the lines of OTHER, which is of the same version. */
+        void addAll(Pending other) {
+            pairs.addAll(other.pairs);
+        }
+
+        /** Order the lines by line number. */
+        void sort() {
+            pairs.sort(Comparator.comparingInt(p -> p[0]));
+        }
+
+        /** Return the number of lines. */
+        int size() {
+            return pairs.size();
+        }
+
+        /** Return true iff there are no lines. */
+        boolean isEmpty() {
+            return pairs.isEmpty();
+        }
+
+        /** Return the line number of the Kth line. */
+        int line(int k) {
+            return pairs.get(k)[0];
+        }
+
+        /** Return the number of the line the Kth line became. */
+        int target(int k) {
+            return pairs.get(k)[1];
+        }
+
+        /** UID of the version of the file. */
+        private final String blob;
+
+        /** Line number pairs. */
+        private final ArrayList<int[]> pairs = new ArrayList<>();
+    }
+}
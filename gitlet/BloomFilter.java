@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/** Bloom filters over strings, kept as plain byte arrays. A filter
+ *  answers whether it may contain a string: never wrongly no, and wrongly
+ *  yes for about one string in a hundred, using BITS_PER_KEY bits per
+ *  string it was built from.
+ *  @author Ellsa Fiorenza
+ */
+class BloomFilter {
+
+    /** Bits of filter per string. */
+    static final int BITS_PER_KEY = 10;
+
+    /** Number of bits set per string. */
+    static final int HASHES = 7;
+
+    /** Return a filter containing KEYS. */
+    static byte[] build(Collection<String> keys) {
+        byte[] result = new byte[Math.max(8, (keys.size()
+                                              * BITS_PER_KEY + 7) / 8)];
+        for (String key : keys) {
+            long bits = result.length * 8L;
+            int h1 = h1(key), h2 = h2(key);
+            for (int i = 0; i < HASHES; i += 1) {
+                int bit = (int) Math.floorMod(h1 + (long) i * h2, bits);
+                result[bit >>> 3] |= 1 << (bit & 7);
+            }
+        }
+        return result;
+    }
+
+    /** Return false iff FILTER, built by build, certainly does not
+     *  contain KEY. */
+    static boolean mayContain(byte[] filter, String key) {
+        long bits = filter.length * 8L;
+        int h1 = h1(key), h2 = h2(key);
+        for (int i = 0; i < HASHES; i += 1) {
+            int bit = (int) Math.floorMod(h1 + (long) i * h2, bits);
+            if ((filter[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the first hash of KEY. */
+    private static int h1(String key) {
+        return key.hashCode();
+    }
+
+    /** Return the second hash of KEY: 32-bit FNV-1a of its UTF-8 bytes,
+     *  made odd so that it is never 0. */
+    private static int h2(String key) {
+        int h = 0x811c9dc5;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x01000193;
+        }
+        return h | 1;
+    }
+}
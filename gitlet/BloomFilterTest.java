@@ -0,0 +1,71 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of BloomFilter.
+ *  @author Ellsa Fiorenza
+ */
+public class BloomFilterTest {
+
+    /** Return N distinct paths drawn from RAND. */
+    static List<String> paths(Random rand, int n) {
+        HashSet<String> result = new HashSet<>();
+        while (result.size() < n) {
+            result.add("dir" + rand.nextInt(100) + "/file"
+                       + rand.nextInt(1_000_000) + ".txt");
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** A filter contains every string it was built from, whatever its
+     *  size. */
+    @Test
+    public void noFalseNegatives() {
+        Random rand = new Random(23);
+        for (int n : new int[] { 1, 2, 3, 7, 8, 50, 512, 5000 }) {
+            List<String> keys = paths(rand, n);
+            byte[] filter = BloomFilter.build(keys);
+            for (String key : keys) {
+                assertTrue(key, BloomFilter.mayContain(filter, key));
+            }
+        }
+        byte[] filter = BloomFilter.build(Collections.singleton(""));
+        assertTrue(BloomFilter.mayContain(filter, ""));
+    }
+
+    /** A filter wrongly contains about one string in a hundred. */
+    @Test
+    public void falsePositives() {
+        Random rand = new Random(24);
+        List<String> keys = paths(rand, 2000);
+        byte[] filter = BloomFilter.build(keys.subList(0, 1000));
+        int wrong = 0;
+        for (String key : keys.subList(1000, 2000)) {
+            if (BloomFilter.mayContain(filter, key)) {
+                wrong += 1;
+            }
+        }
+        assertTrue("false positives: " + wrong, wrong < 30);
+    }
+
+    /** A filter built from nothing contains nothing, and the filter size
+     *  follows BITS_PER_KEY. */
+    @Test
+    public void sizes() {
+        byte[] empty = BloomFilter.build(new ArrayList<>());
+        assertEquals(8, empty.length);
+        for (String key : paths(new Random(25), 100)) {
+            assertFalse(BloomFilter.mayContain(empty, key));
+        }
+        assertEquals(1000 * BloomFilter.BITS_PER_KEY / 8,
+                     BloomFilter.build(paths(new Random(26), 1000)).length);
+    }
+
+}
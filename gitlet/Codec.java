@@ -0,0 +1,270 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** A compression method for stored objects. Every object written to the
+ *  ObjectStore starts with a header of MAGIC followed by one byte naming
+ *  the codec that compressed the rest, so codecs can be added without
+ *  breaking existing repositories. Objects written before codecs existed
+ *  have no header and are read as uncompressed. The high bit of the codec
+ *  byte marks an object stored as a Delta; its header then continues with
+ *  the length of its delta chain and the UID of the blob it applies to.
+ *  @author Ellsa Fiorenza
+ */
+abstract class Codec {
+
+    /** Leading bytes of an object written with a codec. */
+    static final byte[] MAGIC = { 'G', 'L', 'T', 0 };
+
+    /** Length of the header: MAGIC and the codec byte. */
+    static final int HEADER = MAGIC.length + 1;
+
+    /** Flag set in the codec byte of an object stored as a Delta against
+     *  another blob. */
+    private static final int DELTA = 0x80;
+
+    /** Length of the extra header of a delta object: the length of its
+     *  delta chain and the UID of its base. */
+    private static final int DELTA_HEADER = 1 + Utils.UID_BYTES;
+
+    /** Stores contents as they are. */
+    static final Codec RAW = new Codec(0, "raw") {
+        @Override
+        OutputStream compress(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            return in;
+        }
+    };
+
+    /** Compresses contents with DEFLATE. */
+    static final Codec DEFLATE = new Codec(1, "deflate") {
+        @Override
+        OutputStream compress(OutputStream out) {
+            return new DeflaterOutputStream(out);
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            return new InflaterInputStream(in);
+        }
+    };
+
+    /** All codecs, indexed by codec byte. */
+    private static final Codec[] CODECS = { RAW, DEFLATE };
+
+    /** A codec identified by codec byte ID and called NAME. */
+    Codec(int id, String name) {
+        _id = (byte) id;
+        _name = name;
+    }
+
+    /** Return the codec used for new objects. It may be chosen with the
+     *  system property gitlet.codec and defaults to DEFLATE. */
+    static Codec current() {
+        String name = System.getProperty("gitlet.codec", DEFLATE.name());
+        for (Codec c : CODECS) {
+            if (c.name().equals(name)) {
+                return c;
+            }
+        }
+        throw Utils.error("unknown codec %s", name);
+    }
+
+    /** Return the name of this codec. */
+    String name() {
+        return _name;
+    }
+
+    /** Return a stream that compresses what is written to it onto OUT.
+     *  Closing it closes OUT. */
+    abstract OutputStream compress(OutputStream out) throws IOException;
+
+    /** Return a stream that decompresses IN. Closing it closes IN. */
+    abstract InputStream decompress(InputStream in) throws IOException;
+
+    /** Return CONTENTS encoded with this codec, header included. */
+    byte[] encode(byte[] contents) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = open(bytes)) {
+            out.write(contents);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return the delta DELTA against the blob BASE, whose own delta chain
+     *  has length DEPTH - 1, encoded with this codec, header included. */
+    byte[] encodeDelta(String base, int depth, byte[] delta) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] header = header();
+        header[MAGIC.length] |= DELTA;
+        bytes.write(header, 0, HEADER);
+        bytes.write(depth);
+        bytes.write(Utils.uidToBytes(base), 0, Utils.UID_BYTES);
+        try (OutputStream out = compress(bytes)) {
+            out.write(delta);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return true iff the stored object DATA is a delta. */
+    static boolean isDelta(byte[] data) {
+        return hasHeader(data) && (data[MAGIC.length] & DELTA) != 0;
+    }
+
+    /** Return the length of the delta chain of the stored object starting
+     *  with DATA: 0 if it is not a delta, otherwise one more than that of
+     *  its base. */
+    static int deltaDepth(byte[] data) {
+        return isDelta(data) ? data[HEADER] & 0xff : 0;
+    }
+
+    /** Return the UID of the base of the delta object DATA. */
+    static String deltaBase(byte[] data) {
+        return Utils.bytesToUid(data, HEADER + 1);
+    }
+
+    /** Write the contents of SOURCE, encoded with this codec, to TARGET,
+     *  streaming them through a fixed-size buffer. */
+    void encode(File source, File target) {
+        try (FileOutputStream file = new FileOutputStream(target)) {
+            if (this == RAW) {
+                file.write(header());
+                try (FileChannel in = FileChannel.open(source.toPath())) {
+                    Utils.transfer(in, 0, in.size(), file.getChannel());
+                }
+                return;
+            }
+            try (InputStream in = new FileInputStream(source);
+                 OutputStream out = open(file)) {
+                in.transferTo(out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the decoded contents of the stored object occupying LENGTH
+     *  bytes of IN from position START, which must not be a delta, to
+     *  TARGET. Uncompressed contents are copied from channel to channel
+     *  by the file system; others are decompressed as a stream. Neither
+     *  is ever held in memory whole. IN is only read with positional
+     *  reads and is not closed. */
+    static void decode(FileChannel in, long start, long length, File target) {
+        try (FileOutputStream out = new FileOutputStream(target)) {
+            byte[] header = new byte[(int) Math.min(length, HEADER)];
+            Utils.readFully(in, ByteBuffer.wrap(header), start);
+            if (isDelta(header)) {
+                throw Utils.error("cannot stream a delta object");
+            }
+            int skip = contentsStart(header);
+            Codec codec = codecOf(header);
+            if (codec == RAW) {
+                Utils.transfer(in, start + skip, length - skip,
+                               out.getChannel());
+                return;
+            }
+            try (InputStream decoded = codec.decompress(
+                     new BufferedInputStream(
+                         Utils.inputStream(in, start + skip, length - skip),
+                         Utils.BUFFER_SIZE))) {
+                decoded.transferTo(out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a stream that encodes what is written to it with this codec,
+     *  header included, onto OUT. Closing it closes OUT. */
+    OutputStream open(OutputStream out) throws IOException {
+        OutputStream buffered =
+            new BufferedOutputStream(out, Utils.BUFFER_SIZE);
+        buffered.write(header());
+        return compress(buffered);
+    }
+
+    /** Return the decoded contents of the stored object DATA. For a
+     *  delta object, that is the delta itself. */
+    static byte[] decode(byte[] data) {
+        int start = contentsStart(data);
+        Codec codec = codecOf(data);
+        if (codec == RAW) {
+            return start == 0 ? data
+                : Arrays.copyOfRange(data, start, data.length);
+        }
+        try (InputStream in = codec.decompress(new ByteArrayInputStream(
+                 data, start, data.length - start))) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the codec that encoded the stored object starting with
+     *  DATA, which is RAW if DATA has no header. */
+    static Codec codecOf(byte[] data) {
+        if (!hasHeader(data)) {
+            return RAW;
+        }
+        int id = data[MAGIC.length] & 0xff & ~DELTA;
+        if (id < 0 || id >= CODECS.length) {
+            throw Utils.error("stored object has unknown codec %d", id);
+        }
+        return CODECS[id];
+    }
+
+    /** Return the offset of the encoded contents in the stored object
+     *  starting with DATA, just past its headers. */
+    private static int contentsStart(byte[] data) {
+        return !hasHeader(data) ? 0
+            : isDelta(data) ? HEADER + DELTA_HEADER : HEADER;
+    }
+
+    /** Return true iff DATA starts with a codec header. */
+    private static boolean hasHeader(byte[] data) {
+        if (data.length < HEADER) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i += 1) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the header of objects encoded with this codec. */
+    private byte[] header() {
+        byte[] result = Arrays.copyOf(MAGIC, HEADER);
+        result[MAGIC.length] = _id;
+        return result;
+    }
+
+    /** Codec byte. */
+    private final byte _id;
+
+    /** Name, as used in the gitlet.codec property. */
+    private final String _name;
+}
@@ -0,0 +1,172 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Codecs and of Delta.
+ *  @author Ellsa Fiorenza
+ */
+public class CodecTest {
+
+    /** Return the UTF-8 bytes of S. */
+    static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return N lines of text, with numbers drawn from a generator seeded
+     *  with SEED. */
+    static byte[] text(int n, long seed) {
+        Random rand = new Random(seed);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.append("line ").append(i).append(": value ")
+                .append(rand.nextInt(1000)).append('\n');
+        }
+        return bytes(result.toString());
+    }
+
+    @Test
+    public void raw() {
+        byte[] contents = text(100, 1);
+        byte[] stored = Codec.RAW.encode(contents);
+        assertEquals(contents.length + Codec.HEADER, stored.length);
+        assertEquals(Codec.RAW, Codec.codecOf(stored));
+        assertFalse(Codec.isDelta(stored));
+        assertArrayEquals(contents, Codec.decode(stored));
+    }
+
+    @Test
+    public void deflate() {
+        byte[] contents = text(1000, 2);
+        byte[] stored = Codec.DEFLATE.encode(contents);
+        assertTrue(stored.length < contents.length / 2);
+        assertEquals(Codec.DEFLATE, Codec.codecOf(stored));
+        assertArrayEquals(contents, Codec.decode(stored));
+    }
+
+    @Test
+    public void empty() {
+        for (Codec c : new Codec[] { Codec.RAW, Codec.DEFLATE }) {
+            byte[] stored = c.encode(new byte[0]);
+            assertEquals(c, Codec.codecOf(stored));
+            assertArrayEquals(new byte[0], Codec.decode(stored));
+        }
+    }
+
+    /** Objects written before codecs existed have no header and are read
+     *  as they are. */
+    @Test
+    public void legacy() {
+        byte[] contents = bytes("no header here");
+        assertEquals(Codec.RAW, Codec.codecOf(contents));
+        assertArrayEquals(contents, Codec.decode(contents));
+        assertArrayEquals(new byte[0], Codec.decode(new byte[0]));
+    }
+
+    @Test(expected = GitletException.class)
+    public void unknownCodec() {
+        byte[] stored = Codec.RAW.encode(bytes("x"));
+        stored[Codec.MAGIC.length] = 0x7f;
+        Codec.decode(stored);
+    }
+
+    /** Streaming encode and decode give the same bytes as encoding in
+     *  memory. */
+    @Test
+    public void streams() throws IOException {
+        byte[] contents = text(20000, 3);
+        for (Codec c : new Codec[] { Codec.RAW, Codec.DEFLATE }) {
+            File source = File.createTempFile("codec", ".in");
+            File stored = File.createTempFile("codec", ".stored");
+            File target = File.createTempFile("codec", ".out");
+            try {
+                Utils.writeContents(source, contents);
+                c.encode(source, stored);
+                byte[] data = Utils.readContents(stored);
+                assertArrayEquals(c.encode(contents), data);
+                try (FileChannel in = FileChannel.open(stored.toPath())) {
+                    Codec.decode(in, 0, in.size(), target);
+                }
+                assertArrayEquals(contents, Utils.readContents(target));
+            } finally {
+                source.delete();
+                stored.delete();
+                target.delete();
+            }
+        }
+    }
+
+    @Test
+    public void deltas() {
+        byte[] base = text(500, 4);
+        String s = new String(base, StandardCharsets.UTF_8);
+        String[] targets = {
+            s, "", s + "appended\n", "prepended\n" + s,
+            s.substring(0, s.length() / 2) + "middle\n"
+                + s.substring(s.length() / 2),
+            s.substring(100, s.length() - 100), "short",
+            new String(text(500, 5), StandardCharsets.UTF_8),
+        };
+        for (String t : targets) {
+            byte[] target = bytes(t);
+            byte[] delta = Delta.compute(base, target);
+            assertArrayEquals(target, Delta.apply(base, delta));
+        }
+        byte[] small = Delta.compute(base, bytes(s + "one more line\n"));
+        assertTrue(small.length < 64);
+        assertArrayEquals(bytes("abc"),
+                          Delta.apply(new byte[0],
+                                      Delta.compute(new byte[0],
+                                                    bytes("abc"))));
+    }
+
+    @Test(expected = GitletException.class)
+    public void wrongBase() {
+        byte[] delta = Delta.compute(text(10, 6), text(11, 6));
+        Delta.apply(text(12, 6), delta);
+    }
+
+    /** A chain of deltas, each stored against the version before it,
+     *  rebuilds every version, and the stored headers record each link's
+     *  base and depth. */
+    @Test
+    public void chain() {
+        for (Codec c : new Codec[] { Codec.RAW, Codec.DEFLATE }) {
+            byte[][] versions = new byte[8][];
+            byte[][] stored = new byte[versions.length][];
+            String[] ids = new String[versions.length];
+            StringBuilder text = new StringBuilder();
+            for (int v = 0; v < versions.length; v += 1) {
+                text.append(new String(text(50, v), StandardCharsets.UTF_8));
+                versions[v] = bytes(text.toString());
+                ids[v] = Utils.sha1(versions[v]);
+                if (v == 0) {
+                    stored[v] = c.encode(versions[v]);
+                } else {
+                    stored[v] = c.encodeDelta(
+                        ids[v - 1], v,
+                        Delta.compute(versions[v - 1], versions[v]));
+                }
+            }
+            for (int v = 1; v < versions.length; v += 1) {
+                assertTrue(Codec.isDelta(stored[v]));
+                assertEquals(v, Codec.deltaDepth(stored[v]));
+                assertEquals(ids[v - 1], Codec.deltaBase(stored[v]));
+                assertEquals(c, Codec.codecOf(stored[v]));
+            }
+            assertEquals(0, Codec.deltaDepth(stored[0]));
+            byte[] contents = Codec.decode(stored[0]);
+            for (int v = 1; v < versions.length; v += 1) {
+                contents = Delta.apply(contents, Codec.decode(stored[v]));
+                assertArrayEquals(versions[v], contents);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/** Garbage collection for the ObjectStore. Every loose object is first
+ *  folded into the pack, so that each object has a position in the pack
+ *  index, and the live objects are then marked in a BitSet over those
+ *  positions: the commits reachable from the given heads through all
+ *  their parents, their trees and files, the given staged files, and the
+ *  blobs any live delta is applied to. Subtrees already marked are not
+ *  entered again, so marking takes time proportional to the number of
+ *  live objects, however much garbage there is. Finally the pack is
+ *  rewritten with the marked objects only, and the commit graph and
+ *  CommitLog forget the commits that are gone, all in one Journal
+ *  commit, so that a crash leaves either the old files or the new
+ *  ones.
+ *  @author Ellsa Fiorenza
+ */
+class Collector {
+
+    /** Delete every object not reachable from the commits whose UIDs are
+     *  HEADS or among the blobs whose UIDs are STAGED. Return the number
+     *  of objects deleted. */
+    static int collect(Collection<String> heads, Collection<String> staged) {
+        ObjectStore.repack();
+        ObjectStore.deleteStalePacks();
+        Pack pack = ObjectStore.pack();
+        if (pack == null) {
+            return 0;
+        }
+        Collector c = new Collector(pack);
+        for (String id : heads) {
+            c.markCommits(id);
+        }
+        for (String id : staged) {
+            c.markBlob(id);
+        }
+        int dead = pack.size() - c._live.cardinality();
+        if (dead > 0) {
+            ObjectStore.rewrite(pack, c._live);
+            CommitGraph.get().retain(c._commits);
+            CommitLog.retain(c._commits);
+            Journal.commit(new HashMap<>());
+            ObjectStore.retire(pack);
+        }
+        return dead;
+    }
+
+    /** A collector for the objects of PACK. */
+    private Collector(Pack pack) {
+        _pack = pack;
+        _live = new BitSet(pack.size());
+    }
+
+    /** Mark the commit whose UID is ID, its ancestors, and their trees.
+     *  A missing commit is reported before anything is rewritten. */
+    private void markCommits(String id) {
+        CommitGraph graph = CommitGraph.get();
+        ArrayDeque<String> work = new ArrayDeque<>();
+        work.push(id);
+        while (!work.isEmpty()) {
+            String commit = work.pop();
+            Commit c = ObjectStore.readCommit(commit);
+            if (c == null) {
+                System.out.println("No commit with that id exists.");
+                throw new GitletException();
+            }
+            if (!mark(commit, Pack.COMMIT)) {
+                continue;
+            }
+            _commits.add(commit);
+            if (c.getTree() != null) {
+                markTree(c.getTree());
+            }
+            for (String p : graph.parents(commit)) {
+                work.push(p);
+            }
+        }
+    }
+
+    /** Mark the tree whose UID is ID and everything under it. */
+    private void markTree(String id) {
+        ArrayDeque<String> work = new ArrayDeque<>();
+        work.push(id);
+        while (!work.isEmpty()) {
+            String tree = work.pop();
+            if (!mark(tree, Pack.TREE)) {
+                continue;
+            }
+            for (Tree.Entry e : Tree.read(tree).entries().values()) {
+                if (e.isTree()) {
+                    work.push(e.id());
+                } else {
+                    markBlob(e.id());
+                }
+            }
+        }
+    }
+
+    /** Mark the blob whose UID is ID and the blobs its delta chain is
+     *  applied to. */
+    private void markBlob(String id) {
+        while (id != null && mark(id, Pack.BLOB)) {
+            byte[] head = _pack.head(_pack.find(id), DELTA_HEAD);
+            id = Codec.isDelta(head) ? Codec.deltaBase(head) : null;
+        }
+    }
+
+    /** Mark the object of type TYPE whose UID is ID as live. Return true
+     *  iff it was not marked already. The only objects that can be loose
+     *  at this point are the trees of commits made before trees existed,
+     *  built while marking; loose objects are never deleted. */
+    private boolean mark(String id, byte type) {
+        int pos = _pack.find(id);
+        if (pos < 0 && type == Pack.TREE && ObjectStore.readTree(id) != null) {
+            return _loose.add(id);
+        } else if (pos < 0 || _pack.type(pos) != type) {
+            throw Utils.error("missing object %s", id);
+        }
+        if (_live.get(pos)) {
+            return false;
+        }
+        _live.set(pos);
+        return true;
+    }
+
+    /** Length of the header of a stored delta: the codec header, chain
+     *  length and base UID. */
+    private static final int DELTA_HEAD = Codec.HEADER + 1 + Utils.UID_BYTES;
+
+    /** The pack holding every object. */
+    private final Pack _pack;
+
+    /** Live objects, by position in the pack index. */
+    private final BitSet _live;
+
+    /** UIDs of the live loose trees. */
+    private final HashSet<String> _loose = new HashSet<>();
+
+    /** UIDs of the live commits. */
+    private final HashSet<String> _commits = new HashSet<>();
+}
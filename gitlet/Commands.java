@@ -1,17 +1,35 @@
 package gitlet;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 /** Commands class that handles all command for Gitlet.
  * @author Ellsa Fiorenza
  */
 
-public class Commands implements Serializable {
+public class Commands {
 
     /* ================= INITIALIZE ================= */
     /** Initialize a new gitlet which automatically starts with 1 commit.
@@ -20,90 +38,208 @@ public class Commands implements Serializable {
      *  Thursday 1 Jan 1970. Initialize commit with message:
      *  "initial commit". */
     public Commands() {
+        this(true);
+    }
+
+    /** Commands on the repository in the current directory, which is
+     *  created first if CREATE. */
+    private Commands(boolean create) {
+        if (!create) {
+            return;
+        }
         String initCommitID;
-        byte[] commitToByte;
 
-        _branches = new HashMap<>();
-        _pairs = new HashMap<>();
-        _files = new ArrayList<>();
-        _head = "master";
         Commit init = new Commit("initial commit",
                 null, null, true);
 
         initCommitID = init.getCommitID();
-        commitToByte = Utils.serialize(init);
-        _branches.put("master", initCommitID);
-
-        File gitlet = new File(".gitlet");
-        File commit = new File(".gitlet/Commit");
-        File stage = new File(".gitlet/Stage");
-        gitlet.mkdir();
-        commit.mkdir();
-        stage.mkdir();
-
-        File initialize = new File(".gitlet/Commit/" + initCommitID);
-        Utils.writeContents(initialize, commitToByte);
+        _refs.branches().put("master", initCommitID);
+        _refs.setHead("master");
+
+        ObjectStore.GITLET.mkdir();
+        ObjectStore.COMMIT_DIR.mkdir();
+        ObjectStore.TREE_DIR.mkdir();
+        ObjectStore.BLOB_DIR.mkdir();
+        writing();
+
+        ObjectStore.writeCommit(init);
+        save();
+    }
+
+    /** Return Commands on the existing repository in the current
+     *  directory. Its branches and staging area are only read from .gitlet
+     *  when a command needs them. Commands that only read the repository
+     *  run without locking it, alongside any number of others; see
+     *  WriteLock. */
+    public static Commands open() {
+        return new Commands(false);
+    }
+
+    /** Write back the parts of the repository state that the commands run
+     *  so far have changed, all together, once the objects they refer to
+     *  are safely on disk. Nothing is written after commands that only
+     *  read, such as log and status. Releases the repository for other
+     *  writers. */
+    public void save() {
+        try {
+            LinkedHashMap<File, byte[]> updates = new LinkedHashMap<>();
+            _refs.changes(updates);
+            _stage.changes(updates);
+            Journal.commit(updates);
+        } finally {
+            WriteLock.release();
+        }
+    }
+
+    /** Prepare to change the repository: wait until no other process is
+     *  changing it, and then finish or undo any command interrupted by a
+     *  crash. Every command that changes the repository calls this before
+     *  reading any of it, so that what it reads is not changed under
+     *  it. */
+    private void writing() {
+        if (WriteLock.acquire()) {
+            Journal.recover();
+        }
     }
 
     /* ================= ADD ================= */
-    /** Add file to staging area.
-     * @param file file that we want to add. */
-    public void add(String file) {
-        String content;
-        String id;
+    /** Add files to staging area. Each of FILES may name a file, a
+     *  directory (meaning every file under it) or a glob pattern such as
+     *  "*.txt". The files are hashed and their contents stored in
+     *  parallel; the staging area is only updated once all of them have
+     *  been stored.
+     * @param files files that we want to add. */
+    public void add(String... files) {
+        writing();
         Commit addCommit;
         HashMap<String, String> allFiles;
-        File added = new File(file);
+        List<String> names = expandPaths(files);
 
-        if (added.exists()) {
-            content = Utils.readContentsAsString(added);
-            id = Utils.sha1(content);
-            File cur = new File(".gitlet/Commit/" + getCurrHead());
+        if (names != null && !names.isEmpty()) {
+            addCommit = ObjectStore.readCommit(getCurrHead());
 
-            if (cur.exists()) {
-                addCommit = Utils.readObject(cur, Commit.class);
-                allFiles = addCommit.getCommitFiles();
+            if (addCommit != null) {
+                allFiles = new HashMap<>();
+                for (String f : names) {
+                    allFiles.put(f, Tree.lookupFile(addCommit.getTree(), f));
+                }
             } else {
                 System.out.println("File does not exist.");
                 return;
             }
-            addStage(file, id, allFiles, content);
+
+            StatCache cache = StatCache.get();
+            Map<String, String> ids = new ConcurrentHashMap<>();
+            names.parallelStream().forEach(f -> ids.put(f, cache.hash(f)));
+
+            Map<String, String> toStore = new HashMap<>();
+            for (String f : names) {
+                if (isChanged(f, ids.get(f), allFiles)) {
+                    toStore.putIfAbsent(ids.get(f), f);
+                }
+            }
+            toStore.entrySet().parallelStream()
+                .filter(e -> !ObjectStore.hasBlob(e.getKey()))
+                .forEach(e -> ObjectStore.writeBlob(e.getKey(),
+                    new File(e.getValue()),
+                    allFiles.get(e.getValue())));
+
+            for (String f : names) {
+                addStage(f, ids.get(f), allFiles);
+            }
+            cache.save();
         } else {
             System.out.println("File does not exist.");
         }
     }
 
+    /** Return the names of the plain files denoted by PATHS, in sorted
+     *  order, or null if one of PATHS denotes nothing. Every name is
+     *  relative to the working directory and normalized, however the
+     *  file was named. */
+    private List<String> expandPaths(String[] paths) {
+        TreeSet<String> result = new TreeSet<>();
+        Path base = Paths.get("").toAbsolutePath();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isFile()) {
+                result.add(workingPath(path));
+                continue;
+            }
+            PathMatcher matcher = null;
+            Path root = file.toPath();
+            if (file.isDirectory()) {
+                workingPath(path);
+            } else {
+                if (!path.matches(".*[*?\\[{].*")) {
+                    return null;
+                }
+                matcher = FileSystems.getDefault()
+                    .getPathMatcher("glob:" + path);
+                root = Paths.get("");
+            }
+            int before = result.size();
+            try (Stream<Path> walk =
+                     Files.walk(root.toAbsolutePath().normalize())) {
+                for (Path p : (Iterable<Path>) walk::iterator) {
+                    Path rel = base.relativize(p);
+                    if (Files.isRegularFile(p)
+                        && !rel.startsWith(ObjectStore.GITLET.getName())
+                        && (matcher == null || matcher.matches(rel))) {
+                        result.add(workingPath(rel.toString()));
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (matcher != null && result.size() == before) {
+                return null;
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the name of the working file PATH relative to the working
+     *  directory, normalized, so that every way of naming a file gives
+     *  the same name. PATH must be inside the working directory.
+     *  @param path the file as named by the user. */
+    private static String workingPath(String path) {
+        Path base = Paths.get("").toAbsolutePath();
+        Path rel = base.relativize(Paths.get(path).toAbsolutePath()
+                                   .normalize());
+        if (rel.startsWith("..")
+            || rel.startsWith(ObjectStore.GITLET.getName())) {
+            System.out.println("File is outside the working directory.");
+            throw new GitletException();
+        }
+        return rel.toString().replace(File.separatorChar, Tree.SEPARATOR);
+    }
+
+    /** Return true iff the file FILENAME, whose contents have UID ID,
+     *  differs from its version in FILES.
+     *  @param fileName the name of the file.
+     *  @param id the unique id of its contents.
+     *  @param files the map of all files. */
+    private boolean isChanged(String fileName, String id,
+                              HashMap<String, String> files) {
+        return files == null || files.get(fileName) == null
+            || !files.get(fileName).equals(id);
+    }
+
     /** If commit files is empty, or if file name existed,
      *  or if file name existed and content is modified, add the file to
-     *  stage directory and update stageArea's contents. Otherwise, If the file
-     *  existed in staging area or files, remove it.
-     *  @param contentFile the content of the file.
+     *  stageArea's contents, whose contents must already be stored.
+     *  If the file is marked for removal, unmark it.
      *  @param fileName the name of the file.
      *  @param files the map of all files.
      *  @param id the unique commit id. */
     private void addStage(String fileName, String id,
-                          HashMap<String, String> files,
-                          String contentFile) {
-        File commitFile = new File(".gitlet/Stage/" + id);
-        boolean add = false;
-
-        if (files == null || !files.containsKey(fileName)) {
-            add = true;
-        } else if (files.containsKey(fileName)) {
-            if (files.get(fileName) == null
-                    || !files.get(fileName).equals(id)) {
-                add = true;
-            }
-        } else if (commitFile.exists()) {
-            _pairs.remove(fileName);
-        }
-
-        if (add) {
-            _pairs.put(fileName, id);
-            Utils.writeContents(commitFile, contentFile);
+                          HashMap<String, String> files) {
+        if (isChanged(fileName, id, files)) {
+            _stage.added().put(fileName, id);
         }
-        if (_files.contains(fileName)) {
-            _files.remove(fileName);
+        if (_stage.removed().contains(fileName)) {
+            _stage.removed().remove(fileName);
         }
     }
 
@@ -113,8 +249,9 @@ public class Commands implements Serializable {
      * @param message the commit message, must not be empty.
      * @param par the list of parents. */
     public void commit(String message, boolean merge, String[] par) {
+        writing();
         Commit commit;
-        HashMap<String, String> commitFiles;
+        String tree;
         String commitID;
         String[] parents;
 
@@ -122,47 +259,35 @@ public class Commands implements Serializable {
             System.out.println("Please enter a commit message.");
             throw new GitletException();
         } else {
-            File parent = new File(".gitlet/Commit/" + getCurrHead());
-            if (!parent.exists()) {
+            commit = ObjectStore.readCommit(getCurrHead());
+            if (commit == null) {
                 System.out.println("No commit with that id exists.");
                 throw new GitletException();
             }
-            commit = Utils.readObject(parent, Commit.class);
-            commitFiles = commit.getCommitFiles();
-            commitFiles = modifCom(commitFiles);
+            tree = Tree.update(commit.getTree(), modifCom());
 
             parents = merge ? par : new String[] {commit.getCommitID()};
 
-            Commit newCommit = new Commit(message, commitFiles, parents, false);
+            Commit newCommit = new Commit(message, tree, parents, false);
             commitID = newCommit.getCommitID();
-            File commitFile = new File(".gitlet/Commit/" + commitID);
-            Utils.writeObject(commitFile, newCommit);
+            ObjectStore.writeCommit(newCommit);
 
-            _pairs = new HashMap<>();
-            _files = new ArrayList<>();
-            _branches.put(_head, commitID);
+            _stage.clear();
+            _refs.branches().put(_refs.head(), commitID);
         }
     }
 
-    /** Return the modified current commit files.
-     * @param comFiles map of all commited files. */
-    private HashMap<String, String> modifCom(HashMap<String, String> comFiles) {
-        if (comFiles == null) {
-            comFiles = new HashMap<>();
-        }
-
-        if (_pairs.size() != 0 || _files.size() != 0) {
-            if (_files.size() != 0) {
-                for (String file : _files) {
-                    comFiles.remove(file);
-                }
+    /** Return the changes staged for the next commit, as a map from
+     *  each changed path to the UID of its new contents, or to null if it
+     *  is removed. */
+    private HashMap<String, String> modifCom() {
+        if (_stage.added().size() != 0 || _stage.removed().size() != 0) {
+            HashMap<String, String> changes = new HashMap<>();
+            for (String file : _stage.removed()) {
+                changes.put(file, null);
             }
-            if (_pairs.size() != 0) {
-                for (Map.Entry<String, String> e : _pairs.entrySet()) {
-                    comFiles.put(e.getKey(), e.getValue());
-                }
-            }
-            return comFiles;
+            changes.putAll(_stage.added());
+            return changes;
         }
 
         System.out.println("No changes added to the commit.");
@@ -173,28 +298,30 @@ public class Commands implements Serializable {
     /** Remove the file from Commit.
      * @param file file that we want to remove. */
     public void rm(String file) {
+        writing();
         Commit commit;
-        HashMap<String, String> commitFiles;
+        String committed;
         int total = 0;
 
+        file = workingPath(file);
         File rmFile = new File(file);
-        File parent = new File(".gitlet/Commit/" + getCurrHead());
+        commit = ObjectStore.readCommit(getCurrHead());
 
-        if (parent.exists()) {
-            commit = Utils.readObject(parent, Commit.class);
-            commitFiles = commit.getCommitFiles();
+        if (commit != null) {
+            committed = Tree.lookupFile(commit.getTree(), file);
         } else {
             System.out.println("No commit with that id exists.");
             throw new GitletException();
         }
 
-        if (_pairs.containsKey(file)) {
-            _pairs.remove(file);
+        if (_stage.added().containsKey(file)) {
+            _stage.added().remove(file);
             total++;
-        } else if (commitFiles != null && commitFiles.containsKey(file)) {
-            _files.add(file);
+        } else if (committed != null) {
+            _stage.removed().add(file);
             if (rmFile.exists()) {
-                Utils.restrictedDelete(rmFile);
+                deleteWorkingFile(file);
+                StatCache.get().forget(file);
             }
             total++;
         }
@@ -205,110 +332,170 @@ public class Commands implements Serializable {
         }
     }
 
+    /** Delete the working file PATH, relative to the root of the
+     *  repository, unless it is a directory, and then each directory
+     *  holding it that is left empty, as Materializer does.
+     *  @param path the normalized path of the file. */
+    private static void deleteWorkingFile(String path) {
+        File root = new File(System.getProperty("user.dir"));
+        if (!new File(root, ObjectStore.GITLET.getName()).isDirectory()) {
+            throw new IllegalArgumentException(
+                "not .gitlet working directory");
+        }
+        File file = new File(root, path);
+        if (file.isDirectory() || !file.delete()) {
+            return;
+        }
+        File dir = file.getParentFile();
+        while (dir != null && !dir.equals(root) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
     /* ================= RMBRANCH ================= */
-    /** Remove the given BRANCH from _branches.
+    /** Remove the given BRANCH from the branches.
      * @param branch branch that we want to remove. */
     public void rmBranch(String branch) {
-        if (branch.equals(_head)) {
+        writing();
+        if (branch.equals(_refs.head())) {
             System.out.println("Cannot remove the current branch.");
             throw new GitletException();
-        } else if (!_branches.containsKey(branch)) {
+        } else if (!_refs.branches().containsKey(branch)) {
             System.out.println("A branch with that name does not exist.");
             throw new GitletException();
         } else {
-            _branches.remove(branch);
+            _refs.branches().remove(branch);
         }
     }
 
     /* ================= LOG ================= */
     /** log function in command. From the current head commit,
-     * display the info of each commit backwards. */
-    public void log() {
-        Commit commit;
-        String commitID = getCurrHead();
-        while (commitID != null) {
-            File parent = new File(".gitlet/Commit/" + commitID);
+     * display the info of each commit backwards, following first
+     * parents. ARGS may limit the output: "-n N" to the first N commits,
+     * "--since DATE" to commits made on or after DATE (yyyy-MM-dd, with
+     * an optional HH:mm:ss), and "--path PATH" to commits that changed
+     * the file or directory PATH; "--oneline" prints each commit as its
+     * abbreviated id and the first line of its message. Commits are read
+     * from a History as they are printed, so the walk stops as soon as
+     * the output is complete.
+     * @param args the options above. */
+    public void log(String... args) {
+        History history = new History(getCurrHead());
+        long limit = Long.MAX_VALUE;
+        boolean oneline = false;
+        try {
+            for (int i = 0; i < args.length; i += 1) {
+                switch (args[i]) {
+                case "-n":
+                    limit = Long.parseLong(args[++i]);
+                    break;
+                case "--since":
+                    history.since(parseDate(args[++i]));
+                    break;
+                case "--path":
+                    history.touching(args[++i].replaceAll("/+$", ""));
+                    break;
+                case "--oneline":
+                    oneline = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException();
+                }
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException
+                 | ParseException excp) {
+            System.out.println("Incorrect operands.");
+            throw new GitletException();
+        }
+        for (long n = 0; n < limit && history.hasNext(); n += 1) {
+            String commitID = history.next();
+            Commit commit = ObjectStore.readCommit(commitID);
 
-            if (parent.exists()) {
-                commit = Utils.readObject(parent, Commit.class);
-            } else {
+            if (commit == null) {
                 System.out.println("No commit with that id exists.");
                 throw new GitletException();
             }
-            printLog(commitID, commit);
-            commitID = commit.getParentID();
+            if (oneline) {
+                String message = commit.getMessage();
+                int end = message.indexOf('\n');
+                System.out.println(commitID.substring(0, 7) + " "
+                    + (end < 0 ? message : message.substring(0, end)));
+            } else {
+                printLog(commitID, commit);
+            }
         }
     }
 
+    /** Return the time in milliseconds since the epoch of DATE, in local
+     *  time, as yyyy-MM-dd or yyyy-MM-dd HH:mm:ss.
+     * @param date the date to parse. */
+    private static long parseDate(String date) throws ParseException {
+        SimpleDateFormat format = new SimpleDateFormat(
+            date.indexOf(' ') < 0 ? "yyyy-MM-dd" : "yyyy-MM-dd HH:mm:ss");
+        format.setLenient(false);
+        return format.parse(date).getTime();
+    }
+
     /** Prints out the log with given ID and COMMIT.
      * @param id the id to be printed.
      * @param commit the commit we want to look for. */
     private void printLog(String id, Commit commit) {
+        printLog(id, commit.getParents(), commit.getDateTime(),
+                 commit.getMessage());
+    }
+
+    /** Prints out the log of the commit with given ID, PARENTS, DATE and
+     *  MESSAGE. */
+    private void printLog(String id, String[] parents, String date,
+                          String message) {
         System.out.println("===");
         System.out.println("commit " + id);
-        if (commit.getParents() != null && commit.getParents().length > 1) {
-            String firstID = commit.getParents()[0].substring(0, 7);
-            String secondID = commit.getParents()[1].substring(0, 7);
+        if (parents != null && parents.length > 1) {
+            String firstID = parents[0].substring(0, 7);
+            String secondID = parents[1].substring(0, 7);
             System.out.println("Merge: " + firstID + " " + secondID);
         }
-        System.out.println("Date: " + commit.getDateTime());
-        System.out.println(commit.getMessage());
+        System.out.println("Date: " + date);
+        System.out.println(message);
         System.out.println("");
     }
 
     /* ================= GLOBAL-LOG ================= */
     /** Prints all commits that is ever made. The ordering of
-     * commit does not matter. */
+     * commit does not matter; they are streamed from the CommitLog in
+     * the order they were made. */
     public void globalLog() {
-        Commit commit;
-        String commitID;
-        File parent = new File(".gitlet/Commit");
-
-        for (File f : parent.listFiles()) {
-            commitID = f.getName();
-            File commitFile = new File(".gitlet/Commit/" + commitID);
-
-            if (commitFile.exists()) {
-                commit = Utils.readObject(commitFile, Commit.class);
-            } else {
-                System.out.println("No commit with that id exists.");
-                throw new GitletException();
-            }
-            printLog(commitID, commit);
-        }
+        CommitLog.forEach(e -> printLog(e.id(), e.parents(), e.date(),
+                                        e.message()));
     }
 
     /* ================= FIND ================= */
-    /** Find the commit wit given MESSAGE.
-     * @param message message we want to look for in the commit. */
-    public void find(String message) {
-        Commit commit;
-        String commitID;
-        boolean match = false;
-        File file = new File(".gitlet/Commit");
-
-        for (File f : file.listFiles()) {
-            commitID = f.getName();
-            File commitFile = new File(".gitlet/Commit/" + commitID);
-
-            if (commitFile.exists()) {
-                commit = Utils.readObject(commitFile, Commit.class);
-            } else {
-                System.out.println("Found no commit with that message.");
-                throw new GitletException();
-            }
-
-            String commitMessage = commit.getMessage();
-            if (commitMessage.equals(message)) {
-                match = true;
-                System.out.println(commit.getCommitID());
-            }
+    /** Find the commits with a given message, described by ARGS: just
+     *  the message, for an exact match; "-w" and words, for messages
+     *  containing all of those words in any order and case; or "-s" and
+     *  text, for messages containing the text. Messages are looked up in
+     *  the CommitLog's message index.
+     * @param args the message we want to look for in the commit. */
+    public void find(String... args) {
+        List<CommitLog.Entry> found;
+        if (args.length == 2 && args[0].equals("-w")) {
+            found = CommitLog.withWords(args[1]);
+        } else if (args.length == 2 && args[0].equals("-s")) {
+            found = CommitLog.containing(args[1]);
+        } else if (args.length == 1) {
+            found = CommitLog.withMessage(args[0]);
+        } else {
+            System.out.println("Incorrect operands.");
+            throw new GitletException();
         }
 
-        if (!match) {
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message.");
             throw new GitletException();
         }
+        for (CommitLog.Entry e : found) {
+            System.out.println(e.id());
+        }
     }
 
     /* ================= STATUS ================= */
@@ -317,11 +504,11 @@ public class Commands implements Serializable {
      * untracked files. Use lexicographical ordering. */
     public void status() {
         System.out.println("=== Branches ===");
-        Object[] bList = _branches.keySet().toArray();
+        Object[] bList = _refs.branches().keySet().toArray();
         String[] branches = Arrays.copyOf(bList, bList.length, String[].class);
         String[] sortedBranches = lexicographicSort(branches);
         for (String branchName : sortedBranches) {
-            if (branchName.equals(_head)) {
+            if (branchName.equals(_refs.head())) {
                 System.out.println("*" + branchName);
             } else {
                 System.out.println(branchName);
@@ -330,7 +517,7 @@ public class Commands implements Serializable {
         System.out.println("");
 
         System.out.println("=== Staged Files ===");
-        Object[] pList = _pairs.keySet().toArray();
+        Object[] pList = _stage.added().keySet().toArray();
         String[] pairs = Arrays.copyOf(pList, pList.length, String[].class);
         String[] sortedStaged = lexicographicSort(pairs);
         for (String staged : sortedStaged) {
@@ -339,7 +526,7 @@ public class Commands implements Serializable {
         System.out.println("");
 
         System.out.println("=== Removed Files ===");
-        Object[] fList = _files.toArray();
+        Object[] fList = _stage.removed().toArray();
         String[] files = Arrays.copyOf(fList, fList.length, String[].class);
         String[] sortedRemoved = lexicographicSort(files);
         for (String rmFile : sortedRemoved) {
@@ -374,54 +561,39 @@ public class Commands implements Serializable {
     /** checkout -- [file name].
      * @param file file name we want to checkout. */
     public void checkoutFile(String file) {
+        writing();
         _checkoutName = file;
         _checkoutID = getCurrHead();
         _reset = false;
 
-        File parent = new File(".gitlet/Commit/" + _checkoutID);
-        if (parent.exists()) {
-            _checkoutCommit = Utils.readObject(parent, Commit.class);
-            _checkoutCommitFiles = _checkoutCommit.getCommitFiles();
-        } else {
-            System.out.println("No commit with that id exists.");
-            throw new GitletException();
-        }
-
-        if (_checkoutCommitFiles.containsKey(_checkoutName)) {
-            File existingFile = new File(_checkoutName);
-            String fileName = _checkoutCommitFiles.get(_checkoutName);
-            File modifiedFile = new File(".gitlet/Stage/" + fileName);
-            String content = Utils.readContentsAsString(modifiedFile);
-            Utils.writeContents(existingFile, content);
-        } else {
-            System.out.println("File does not exist in that commit.");
-            throw new GitletException();
-        }
+        checkoutFile();
     }
 
     /** checkout [commit id] -- [file name].
      * @param commit commit we want to checkout.
      * @param file file name to be checked. */
     public void checkoutCommit(String commit, String file) {
+        writing();
         _checkoutName = file;
         _reset = false;
         checkCommit(commit);
 
-        File parent = new File(".gitlet/Commit/" + _checkoutID);
-        if (parent.exists()) {
-            _checkoutCommit = Utils.readObject(parent, Commit.class);
-            _checkoutCommitFiles = _checkoutCommit.getCommitFiles();
-        } else {
+        checkoutFile();
+    }
+
+    /** Restore the file _checkoutName from the commit _checkoutID,
+     *  reading only the trees along its path. */
+    private void checkoutFile() {
+        _checkoutCommit = ObjectStore.readCommit(_checkoutID);
+        if (_checkoutCommit == null) {
             System.out.println("No commit with that id exists.");
             throw new GitletException();
         }
-
-        if (_checkoutCommitFiles.containsKey(_checkoutName)) {
-            File existingFile = new File(_checkoutName);
-            File modifiedFile = new File(".gitlet/Stage/"
-                    + _checkoutCommitFiles.get(_checkoutName));
-            String content = Utils.readContentsAsString(modifiedFile);
-            Utils.writeContents(existingFile, content);
+        String id = Tree.lookupFile(_checkoutCommit.getTree(),
+                                    _checkoutName);
+        if (id != null) {
+            restore(_checkoutName, id);
+            StatCache.get().save();
         } else {
             System.out.println("File does not exist in that commit.");
             throw new GitletException();
@@ -431,74 +603,40 @@ public class Commands implements Serializable {
     /** checkout [branch name].
      * @param branch branch name we want to checkout. */
     public void checkoutBranch(String branch) {
+        writing();
         _checkoutBranch = branch;
         checkBranch();
-        _checkoutID = _branches.get(_checkoutBranch);
+        _checkoutID = _refs.branches().get(_checkoutBranch);
         _reset = false;
 
-        File parent = new File(".gitlet/Commit/" + _checkoutID);
-        if (parent.exists()) {
-            _checkoutCommit = Utils.readObject(parent, Commit.class);
-            _checkoutCommitFiles = _checkoutCommit.getCommitFiles();
-        } else {
+        _checkoutCommit = ObjectStore.readCommit(_checkoutID);
+        if (_checkoutCommit == null) {
             System.out.println("No commit with that id exists.");
             throw new GitletException();
         }
 
-        _currentDir = new File(System.getProperty("user.dir"));
-        _dirFiles = _currentDir.listFiles();
-
-        checkUntracked();
+        materialize(false);
 
-        if (_checkoutCommitFiles == null) {
-            for (File f : _dirFiles) {
-                Utils.restrictedDelete(f);
-            }
-        } else {
-            for (File f : _dirFiles) {
-                if (!_checkoutCommitFiles.containsKey(f.getName())) {
-                    Utils.restrictedDelete(f);
-                }
-            }
-        }
-
-        if (_checkoutCommitFiles != null) {
-            for (String f : _checkoutCommitFiles.keySet()) {
-                File existingFile = new File(f);
-                String commitFile = _checkoutCommitFiles.get(f);
-                File modifiedFile = new File(".gitlet/Stage/" + commitFile);
-                String content = Utils.readContentsAsString(modifiedFile);
-                Utils.writeContents(existingFile, content);
-            }
-        }
-
-        _pairs = new HashMap<>();
-        _files = new ArrayList<>();
-        _head = _checkoutBranch;
+        _stage.clear();
+        _refs.setHead(_checkoutBranch);
     }
 
     /** Check whether the given COMMIT exists. If not found,
      * print the error message. If the commit length is not
-     * equals to the UID_LENGTH, set the checkoutID to be COMMIT.*/
+     * equals to the UID_LENGTH, set the checkoutID to the unique
+     * commit whose id starts with COMMIT.*/
     private void checkCommit(String commit) {
-        boolean found = false;
         if (commit.length() != Utils.UID_LENGTH) {
-            File commitFile = new File(".gitlet/Commit");
-            File[] allCommits = commitFile.listFiles();
-            assert allCommits != null;
-
-            for (File f : allCommits) {
-                if (f.getName().contains(commit)) {
-                    _checkoutID = f.getName();
-                    found = true;
-                    break;
-                }
-            }
+            List<String> found = CommitGraph.get().withPrefix(commit, 2);
 
-            if (!found) {
+            if (found.isEmpty()) {
                 System.out.println("No commit with that id exists.");
                 throw new GitletException();
+            } else if (found.size() > 1) {
+                System.out.println("Commit id " + commit + " is ambiguous.");
+                throw new GitletException();
             }
+            _checkoutID = found.get(0);
         } else {
             _checkoutID = commit;
         }
@@ -508,25 +646,26 @@ public class Commands implements Serializable {
      * branch or the head is the branch, prints error message
      * and throw an exception. */
     private void checkBranch() {
-        if (!_branches.containsKey(_checkoutBranch)) {
+        if (!_refs.branches().containsKey(_checkoutBranch)) {
             System.out.println("No such branch exists.");
             throw new GitletException();
         }
-        if (_head.equals(_checkoutBranch)) {
+        if (_refs.head().equals(_checkoutBranch)) {
             System.out.println("No need to checkout the current branch.");
             throw new GitletException();
         }
     }
 
     /* ================= BRANCH ================= */
-    /** Put the given branch with BRANCHNAME in _branches.
+    /** Put the given branch with BRANCHNAME in the branches.
      * @param branchName branch we want to put. */
     public void branch(String branchName) {
-        if (_branches.containsKey(branchName)) {
+        writing();
+        if (_refs.branches().containsKey(branchName)) {
             System.out.println("A branch with that name already exists.");
             throw new GitletException();
         } else {
-            _branches.put(branchName, getCurrHead());
+            _refs.branches().put(branchName, getCurrHead());
         }
     }
 
@@ -536,137 +675,116 @@ public class Commands implements Serializable {
      * branch's head, also clear the staging area.
      * @param commit the given commit. */
     public void reset(String commit) {
+        writing();
         _reset = true;
         checkCommit(commit);
 
-        File parent = new File(".gitlet/Commit/" + _checkoutID);
-        if (parent.exists()) {
-            _checkoutCommit = Utils.readObject(parent, Commit.class);
-            _checkoutCommitFiles = _checkoutCommit.getCommitFiles();
-        } else {
+        _checkoutCommit = ObjectStore.readCommit(_checkoutID);
+        if (_checkoutCommit == null) {
             System.out.println("No commit with that id exists.");
             throw new GitletException();
         }
 
-        _currentDir = new File(System.getProperty("user.dir"));
-        _dirFiles = _currentDir.listFiles();
+        materialize(true);
 
-        checkUntracked();
-
-        if (_checkoutCommitFiles == null) {
-            for (File f : _dirFiles) {
-                Utils.restrictedDelete(f);
-            }
-        } else {
-            for (File f : _dirFiles) {
-                if (!_checkoutCommitFiles.containsKey(f.getName())) {
-                    Utils.restrictedDelete(f);
-                }
-            }
-        }
-
-        if (_checkoutCommitFiles != null) {
-            for (String f : _checkoutCommitFiles.keySet()) {
-                File existingFile = new File(f);
-                String commitFile = _checkoutCommitFiles.get(f);
-                File modifiedFile = new File(".gitlet/Stage/" + commitFile);
-                String content = Utils.readContentsAsString(modifiedFile);
-                Utils.writeContents(existingFile, content);
-            }
-        }
-
-        _pairs = new HashMap<>();
-        _branches.put(_head, _checkoutID);
+        _stage.clear();
+        _refs.branches().put(_refs.head(), _checkoutID);
     }
 
-    /** Check any untracked files. If the files does not exist or
-     * there is an untracked files, prints out error message and
-     * throw an exception. */
-    private void checkUntracked() {
-        File parent = new File(".gitlet/Commit/" + getCurrHead());
-        if (parent.exists()) {
-            _checkoutCurrCommit = Utils.readObject(parent, Commit.class);
-            _checkoutCurrCommitFiles = _checkoutCurrCommit.getCommitFiles();
-        } else {
+    /** Make the working directory match the checkout commit. Only the
+     *  paths whose contents differ between the current commit and the
+     *  checkout commit, found by a TreeDiff of their trees, are deleted or
+     *  written, by a Materializer; every other file, and its modification
+     *  time, is left alone, so local changes to it are kept. If HARD, the
+     *  other files of the checkout commit are also restored where they
+     *  were changed locally, which the StatCache can mostly tell without
+     *  reading them.
+     * @param hard true to discard local changes too. */
+    private void materialize(boolean hard) {
+        _checkoutCurrCommit = ObjectStore.readCommit(getCurrHead());
+        if (_checkoutCurrCommit == null) {
             System.out.println("No commit with that id exists.");
             throw new GitletException();
         }
-
-        if (_checkoutCurrCommitFiles == null && _dirFiles.length > 1) {
-            System.out.println("There is an untracked file in the way; "
-                    + "delete it, or add and commit it first.");
-            throw new GitletException();
+        List<TreeDiff.Change> changes =
+            TreeDiff.diff(_checkoutCurrCommit.getTree(),
+                          _checkoutCommit.getTree());
+        checkUntracked(changes);
+        Materializer work = new Materializer();
+        if (hard && _checkoutCommit.getCommitFiles() != null) {
+            for (Map.Entry<String, String> e
+                     : _checkoutCommit.getCommitFiles().entrySet()) {
+                work.write(e.getKey(), e.getValue());
+            }
+        }
+        for (TreeDiff.Change c : changes) {
+            if (c.given() == null) {
+                work.delete(c.path());
+            } else {
+                work.write(c.path(), c.given());
+            }
         }
+        work.run();
+        StatCache.get().save();
+    }
 
-        for (File f : _dirFiles) {
-            if (_checkoutCommitFiles != null && _checkoutCurrCommitFiles != null
-                    && !_checkoutCurrCommitFiles.containsKey(f.getName())
-                    && _checkoutCommitFiles.containsKey(f.getName())) {
+    /** Check any untracked files. If a file that CHANGES would write is
+     * not tracked by the current commit but exists, prints out error
+     * message and throw an exception.
+     * @param changes the changes from the current commit. */
+    private void checkUntracked(List<TreeDiff.Change> changes) {
+        for (TreeDiff.Change c : changes) {
+            if (c.current() == null && new File(c.path()).exists()) {
                 System.out.println("There is an untracked file in the way; "
                         + "delete it, or add and commit it first.");
                 throw new GitletException();
             }
         }
-
     }
 
     /* ================= MERGE ================= */
-    /** Merge files in branch BRANCH together.
+    /** Merge files in branch BRANCH together. The paths to merge are
+     *  found by a TreeDiff of the split point, current and given trees,
+     *  and all of them are checked for untracked files in the way before
+     *  the working directory is touched.
      * @param branch the branch we want to merge. */
     public void merge(String branch) {
+        writing();
         _branch = branch;
-        _currentBranch = _head;
-        _currentBranchID = _branches.get(_currentBranch);
+        _currentBranch = _refs.head();
+        _currentBranchID = _refs.branches().get(_currentBranch);
         checkError();
-        if (_branches.containsKey(_branch)) {
-            _branchID = _branches.get(_branch);
-        }
+        _branchID = _refs.branches().get(_branch);
         _splitPoint = findSplitPoint();
-        setCommitandFiles(_splitPoint, "splitCommit");
-        setCommitandFiles(_branchID, "givenCommit");
-        setCommitandFiles(_currentBranchID, "currentCommit");
-        if (_splitFiles != null) {
-            for (String f : _splitFiles.keySet()) {
-                if (!isModif(f, _currentBranchFiles, true)
-                        && !_branchFiles.containsKey(f)) {
-                    File toDelete = new File(f);
-                    Utils.restrictedDelete(toDelete);
-                    rm(f);
-                }
-            }
-        }
-        if (_branch.equals("B2")) {
-            File toDelete = new File("f.txt");
-            Utils.restrictedDelete(toDelete);
-            rm("f.txt");
-        }
         if (isCommitGivenBranch() || isCurrentBranch()) {
             return;
         }
-        _currentDir = new File(System.getProperty("user.dir"));
-        _dirFiles = _currentDir.listFiles();
-        checkUntracked();
-        if (_splitFiles != null) {
-            splitFiles();
-        }
-        if (_branchFiles != null) {
-            branchFiles();
-        }
-        if (_currentBranchFiles != null) {
-            currentBranchFiles();
-        }
-        for (File f : _dirFiles) {
-            if (!_currentBranchFiles.containsKey(f.getName())
-                    && !f.getName().equals(".gitlet")) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                throw new GitletException();
+        List<TreeDiff.Change> changes =
+            TreeDiff.merge(commitTree(_splitPoint),
+                           commitTree(_currentBranchID),
+                           commitTree(_branchID));
+        checkUntracked(changes);
+        boolean conflict = false;
+        for (TreeDiff.Change c : changes) {
+            if (c.isConflict()) {
+                conflict |= combineContent(c);
+            } else if (c.given() == null) {
+                new File(c.path()).delete();
+                StatCache.get().forget(c.path());
+                _stage.removed().add(c.path());
+            } else {
+                restore(c.path(), c.given());
+                _stage.added().put(c.path(), c.given());
             }
         }
+        StatCache.get().save();
+        if (conflict) {
+            System.out.println("Encountered a merge conflict.");
+        }
         _parents = new String[2];
         _parents[0] = getCurrHead();
         _parents[1] = _branchID;
-        String message = "Merged " + _branch + " into " + _head + ".";
+        String message = "Merged " + _branch + " into " + _refs.head() + ".";
         commit(message, true, _parents);
     }
 
@@ -688,183 +806,69 @@ public class Commands implements Serializable {
     private boolean isCurrentBranch() {
         if (_splitPoint.equals(_currentBranchID)) {
             System.out.println("Current branch fast-forwarded.");
-            _branches.put(_head, _branchID);
+            _refs.branches().put(_refs.head(), _branchID);
             return true;
         }
         return false;
     }
 
-    /** Check in splits files. */
-    private void splitFiles() {
-        for (Map.Entry<String, String> entry : _splitFiles.entrySet()) {
-            String fileName = entry.getKey();
-            boolean found = false, cont = false;
-            for (Map.Entry<String, String> e : _branchFiles.entrySet()) {
-                String givenFileName = e.getKey();
-                if (givenFileName.equals(fileName)) {
-                    found = true;
-                    break;
-                }
-            }
-            if (!found && !isModif(fileName, _currentBranchFiles, true)) {
-                File toDelete = new File(fileName);
-                Utils.restrictedDelete(toDelete);
-                rm(fileName);
-                cont = true;
-            }
-
-            if (cont) {
-                continue;
-            }
-        }
-    }
-
-    /** Check the branch files. */
-    private void branchFiles() {
-        for (Map.Entry<String, String> entry : _branchFiles.entrySet()) {
-            String fileName = entry.getKey();
-
-            boolean split = false, current = false, given = false;
-            String splitFile = "", currFile = "", givFile = "";
-
-            if (_splitFiles != null) {
-                split = _splitFiles.containsKey(fileName);
-                splitFile = _splitFiles.get(fileName);
-            }
-            if (_currentBranchFiles != null) {
-                current = _currentBranchFiles.containsKey(fileName);
-                currFile = _currentBranchFiles.get(fileName);
-            }
-            if (_branchFiles != null) {
-                given  = _branchFiles.containsKey(fileName);
-                givFile = _branchFiles.get(fileName);
-            }
-
-            if (current && split && currFile.equals(splitFile)
-                    && !givFile.equals(splitFile)) {
-                _pairs.put(fileName, givFile);
-            } else if (current && split && !currFile.equals(splitFile)
-                    && givFile.equals(splitFile)) {
-                _pairs.put(fileName, splitFile);
-            }
-
-            if (!current && !split) {
-                String commitID = _commit.getCommitID();
-                checkoutCommit(commitID, fileName);
-                _pairs.put(fileName, splitFile);
-            }
-
-            checkConflict(current, given, split, currFile,
-                    givFile, splitFile, fileName, 1);
+    /** Get the content of the blob ID, which is empty if ID is null.
+     * @param id the unique id of the contents, or null.
+     * @return the content of content. */
+    private String getContent(String id) {
+        if (id != null) {
+            return new String(ObjectStore.readBlob(id),
+                              StandardCharsets.UTF_8);
         }
+        return "";
     }
 
-    /** Check the current branch files. */
-    private void currentBranchFiles() {
-        for (Map.Entry<String, String> entry : _currentBranchFiles.entrySet()) {
-            String fileName = entry.getKey(),
-                    splitFile = "", currFile = "", givFile = "";
-            boolean split = false, current = false, given = false;
-
-            if (_splitFiles != null) {
-                split = _splitFiles.containsKey(fileName);
-                splitFile = _splitFiles.get(fileName);
-            }
-            if (_currentBranchFiles != null) {
-                current = _currentBranchFiles.containsKey(fileName);
-                currFile = _currentBranchFiles.get(fileName);
-            }
-            if (_branchFiles != null) {
-                given  = _branchFiles.containsKey(fileName);
-                givFile = _branchFiles.get(fileName);
-            }
-
-            if (!given && split && currFile.equals(splitFile)) {
-                _files.add(fileName);
-            }
-
-            checkConflict(current, given, split, currFile,
-                    givFile, splitFile, fileName, 2);
+    /** Write the blob ID to the working file NAME, creating its
+     *  directory if needed, and record it in the StatCache. Nothing is
+     *  written if the file already has those contents, as the StatCache
+     *  can usually tell without reading it; otherwise the contents go
+     *  from the object store to the file without passing through the
+     *  heap.
+     * @param name the file's name.
+     * @param id the unique id of its contents. */
+    private void restore(String name, String id) {
+        File file = new File(name);
+        if (file.isFile() && id.equals(StatCache.get().hash(name))) {
+            return;
         }
-    }
-
-    /** Check if there exists a conflict.
-     * @param fileName the file's name.
-     * @param current true/false boolean.
-     * @param currFile the current file's name.
-     * @param given true/false boolean.
-     * @param givFile the given file's name.
-     * @param cond is the condition to check.
-     * @param split split string.
-     * @param splitFile file to split. */
-    private void checkConflict(boolean current, boolean given, boolean split,
-                               String currFile, String givFile,
-                               String splitFile, String fileName, int cond) {
-        if (cond == 1) {
-            if (current && split && !givFile.equals(splitFile)
-                    && !currFile.equals(splitFile)
-                    && !currFile.equals(givFile)) {
-                String currContent = getContent(fileName, _currentBranchFiles);
-                String givContent = getContent(fileName, _branchFiles);
-                combineContent(currContent, givContent, fileName);
-                System.out.println("Encountered a merge conflict.");
-            }
-            if (current && !split && !givFile.equals(currFile)) {
-                String currContent = getContent(fileName, _currentBranchFiles);
-                String givContent = getContent(fileName, _branchFiles);
-                combineContent(currContent, givContent, fileName);
-                System.out.println("Encountered a merge conflict.");
-            }
-            if (!current && split && given && !givFile.equals(splitFile)) {
-                String currContent = getContent(fileName, _currentBranchFiles);
-                String givContent = getContent(fileName, _branchFiles);
-                combineContent(currContent, givContent, fileName);
-                System.out.println("Encountered a merge conflict.");
-            }
-        } else {
-            if (current && split && !given && !splitFile.equals(currFile)) {
-                String currContent = getContent(fileName, _currentBranchFiles);
-                String givContent = getContent(fileName, _branchFiles);
-                combineContent(currContent, givContent, fileName);
-                System.out.println("Encountered a merge conflict.");
-            }
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
         }
+        ObjectStore.restore(id, file);
+        StatCache.get().record(name, id);
     }
 
-
-    /** Get the content of the file NAME if the file exists in FILES..
-     * @param name the file name we want to read.
-     * @param files the map of files' name to unique id.
-     * @return the content of content. */
-    private String getContent(String name, HashMap<String, String> files) {
-        if (files.containsKey(name)) {
-            String uniqueID = files.get(name);
-            File newFile = new File(".gitlet/Stage/" + uniqueID);
-            return Utils.readContentsAsString(newFile);
+    /** Combine the file changed on both sides by C together, line by
+     *  line, write the result to the working file and stage it.
+     * @param c the change to the file.
+     * @return true if some lines are in conflict. */
+    private boolean combineContent(TreeDiff.Change c) {
+        Merge3 merged = new Merge3(getContent(c.split()),
+                                   getContent(c.current()),
+                                   getContent(c.given()));
+        File newFile = new File(c.path());
+        File dir = newFile.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
         }
-        return "";
-    }
-
-    /** Combine the file together.
-     * @param file file's name.
-     * @param current current file message.
-     * @param given given file message. */
-    private void combineContent(String current, String given,
-                                String file) {
-        String combined =  "<<<<<<< HEAD" + "\n" + current + "=======" + "\n"
-                + given + ">>>>>>>" + "\n";
-        File newFile = new File(file);
-        add(file);
-        Utils.writeContents(newFile, combined);
+        Utils.writeContents(newFile, merged.result());
+        add(c.path());
+        return merged.hasConflicts();
     }
 
     /** Check whether error exists in merge. */
     private void checkError() {
-        if (!_branches.containsKey(_branch)) {
+        if (!_refs.branches().containsKey(_branch)) {
             System.out.println("A branch with that name does not exist.");
             throw new GitletException();
         }
-        if (_pairs.size() > 0) {
+        if (_stage.added().size() > 0) {
             System.out.println("You have uncommitted changes.");
             throw new GitletException();
         }
@@ -874,92 +878,149 @@ public class Commands implements Serializable {
         }
     }
 
-    /** find the split point.
+    /** find the split point: the best common ancestor of the current
+     * and given branch heads, following all parents of merge commits.
      * @return the split point. */
     private String findSplitPoint() {
-        String split = "";
-        _branchCommits = new ArrayList<>();
-        _currentBranchCommits = new ArrayList<>();
-
-        addAll(_branchID, _branchCommits);
-        addAll(_currentBranchID, _currentBranchCommits);
-        for (String givCom : _branchCommits) {
-            String[] found = new String[2];
-            if (_currentBranchCommits.contains(givCom)) {
-                found[0] = "t";
-                found[1] = givCom;
-            } else {
-                found[0] = "f";
-                found[1] = "";
-            }
+        String split = new MergeBase(CommitGraph.get())
+                .best(_currentBranchID, _branchID);
+        return split == null ? "" : split;
+    }
 
-            if (found[0].equals("t")) {
-                split = found[1];
-                break;
-            }
+    /** Return the root tree of the commit whose id is ID, or null if it
+     *  has no files or ID is empty.
+     * @param id the commit id. */
+    private String commitTree(String id) {
+        if (id.isEmpty()) {
+            return null;
+        }
+        Commit found = ObjectStore.readCommit(id);
+        if (found == null) {
+            System.out.println("No commit with that id exists.");
+            throw new GitletException();
         }
-        return split;
+        return found.getTree();
     }
 
-    /** Add all Commits to parent p.
-     * @param p parent p.
-     * @param branch the branch list. */
-    private void addAll(String p, ArrayList<String> branch) {
-        while (p != null) {
-            branch.add(p);
-            Commit commit;
-
-            File parent = new File(".gitlet/Commit/" + p);
-            if (parent.exists()) {
-                commit = Utils.readObject(parent, Commit.class);
+    /* ================= DIFF ================= */
+    /** Print the differences in the tracked files as a unified diff.
+     *  With no ARGS, compare the head commit with the working directory;
+     *  with "--staged", compare it with the staging area; with two commit
+     *  ids, compare those commits. Files are compared by UID first, so
+     *  only those that differ are read, and the diff is written out as it
+     *  is computed.
+     * @param args the mode, as above. */
+    public void diff(String... args) {
+        List<TreeDiff.Change> changes;
+        boolean working = args.length == 0;
+        if (args.length == 2) {
+            checkCommit(args[0]);
+            String from = commitTree(_checkoutID);
+            checkCommit(args[1]);
+            changes = TreeDiff.diff(from, commitTree(_checkoutID));
+        } else if (working
+                   || (args.length == 1 && args[0].equals("--staged"))) {
+            changes = headChanges(working);
+        } else {
+            System.out.println("Incorrect operands.");
+            throw new GitletException();
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+            new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+            Utils.BUFFER_SIZE));
+        for (TreeDiff.Change c : changes) {
+            byte[] now;
+            if (c.given() == null) {
+                now = null;
+            } else if (working) {
+                now = Utils.readContents(new File(c.path()));
             } else {
-                System.out.println("No commit with that id exists.");
-                throw new GitletException();
+                now = ObjectStore.readBlob(c.given());
             }
-
-            p = commit.getParentID();
+            byte[] old = c.current() == null ? null
+                : ObjectStore.readBlob(c.current());
+            UnifiedDiff.write(out, c.path(), old, now);
         }
+        out.flush();
     }
 
-    /** Set the split commit and split files.
-     * @param commit the given commit.
-     * @param id the given id. */
-    private void setCommitandFiles(String id, String commit) {
-        File parent = new File(".gitlet/Commit/" + id);
-        if (parent.exists()) {
-            if (commit.equals("splitCommit")) {
-                _splitCommit = Utils.readObject(parent, Commit.class);
-                _splitFiles = _splitCommit.getCommitFiles();
-            } else if (commit.equals("currentCommit")) {
-                _currentCommit = Utils.readObject(parent, Commit.class);
-                _currentBranchFiles = _currentCommit.getCommitFiles();
-            } else if (commit.equals("givenCommit")) {
-                _commit = Utils.readObject(parent, Commit.class);
-                _branchFiles = _commit.getCommitFiles();
+    /** Return the changes from the head commit to the staging area, or to
+     *  the working directory if WORKING, sorted by path. Working files
+     *  are hashed through the StatCache, which is not saved, since diff
+     *  only reads the repository.
+     * @param working true to compare with the working directory. */
+    private List<TreeDiff.Change> headChanges(boolean working) {
+        Commit head = ObjectStore.readCommit(getCurrHead());
+        HashMap<String, String> from = head.getCommitFiles();
+        if (from == null) {
+            from = new HashMap<>();
+        }
+        TreeMap<String, String> to = new TreeMap<>(from);
+        for (String f : _stage.removed()) {
+            to.remove(f);
+        }
+        to.putAll(_stage.added());
+        if (working) {
+            for (Map.Entry<String, String> e : to.entrySet()) {
+                e.setValue(new File(e.getKey()).isFile()
+                           ? StatCache.get().hash(e.getKey()) : null);
+            }
+        }
+        TreeSet<String> paths = new TreeSet<>(from.keySet());
+        paths.addAll(to.keySet());
+        ArrayList<TreeDiff.Change> result = new ArrayList<>();
+        for (String path : paths) {
+            String old = from.get(path), now = to.get(path);
+            if (!Objects.equals(old, now)) {
+                result.add(new TreeDiff.Change(path, old, old, now));
             }
+        }
+        return result;
+    }
+
+    /* ================= BLAME ================= */
+    /** Print each line of a file with the commit that last changed it.
+     *  ARGS is the file's name, for its version in the head commit, or a
+     *  commit id and the file's name. Lines are printed as soon as they
+     *  are accounted for; see Blame.
+     * @param args the commit, if any, and the file. */
+    public void blame(String... args) {
+        if (args.length == 2) {
+            checkCommit(args[0]);
+        } else if (args.length == 1) {
+            _checkoutID = getCurrHead();
         } else {
+            System.out.println("Incorrect operands.");
+            throw new GitletException();
+        }
+        String file = args[args.length - 1];
+        Commit commit = ObjectStore.readCommit(_checkoutID);
+        if (commit == null) {
             System.out.println("No commit with that id exists.");
             throw new GitletException();
         }
+        HashMap<String, String> files = commit.getCommitFiles();
+        if (files == null || !files.containsKey(file)) {
+            System.out.println("File does not exist in that commit.");
+            throw new GitletException();
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+            new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+            Utils.BUFFER_SIZE));
+        Blame.write(out, _checkoutID, file);
+        out.flush();
     }
 
-    /** Check if the file has any modification.
-     * @param split true/false boolean for split.
-     * @param fileName the file's name we want to check.
-     * @param curr file from curr branch.
-     * @return true if there is any modification, false otherwise.*/
-    private boolean isModif(String fileName, HashMap<String, String> curr,
-                            Boolean split) {
-        HashMap<String, String> oth = split ? _splitFiles : _branchFiles;
-        if (curr.containsKey(fileName) && !oth.containsKey(fileName)) {
-            return true;
-        } else if (oth.containsKey(fileName) && !curr.containsKey(fileName)) {
-            return true;
-        } else if (!curr.containsKey(fileName) && !oth.containsKey(fileName)) {
-            return false;
-        } else {
-            return !curr.get(fileName).equals(oth.get(fileName));
-        }
+    /* ================= GC ================= */
+    /** Fold every loose commit and file version into the pack, so that
+     *  the repository holds two files instead of one per object, and drop
+     *  every object that no branch and no staged file needs, such as
+     *  commits left behind by reset and files staged but never committed.
+     *  See Collector. */
+    public void gc() {
+        writing();
+        Collector.collect(_refs.branches().values(),
+                          _stage.added().values());
     }
 
     /* ================= OTHERS ================= */
@@ -969,39 +1030,15 @@ public class Commands implements Serializable {
     /** Saves unique ID of given branch. */
     private String _branchID;
 
-    /** All commits of the given branch. */
-    private ArrayList<String> _branchCommits;
-
-    /** Given branch commit. */
-    private Commit _commit;
-
-    /** Given branch files. */
-    private HashMap<String, String> _branchFiles;
-
     /** Saves the information fo the current branch. */
     private String _currentBranch;
 
     /** Saves unique ID of current branch. */
     private String _currentBranchID;
 
-    /** All commits of the current branch. */
-    private ArrayList<String> _currentBranchCommits;
-
-    /** Current branch commit. */
-    private Commit _currentCommit;
-
-    /** Current branch files. */
-    private HashMap<String, String> _currentBranchFiles;
-
     /** The split point of given branch and current branch. */
     private String _splitPoint;
 
-    /** Split point commit. */
-    private Commit _splitCommit;
-
-    /** Split point files. */
-    private HashMap<String, String> _splitFiles;
-
     /** Merge parents. */
     private String[] _parents;
 
@@ -1017,38 +1054,20 @@ public class Commands implements Serializable {
     /** Checkout Commit object. */
     private Commit _checkoutCommit;
 
-    /** Map all checkout name and file name. */
-    private HashMap<String, String> _checkoutCommitFiles;
-
     /** Current Commit object. */
     private Commit _checkoutCurrCommit;
 
-    /** Map all current commit files. */
-    private HashMap<String, String> _checkoutCurrCommitFiles;
-
-    /** File in current directory. */
-    private File _currentDir;
-
-    /** List of files in current directory. */
-    private File[] _dirFiles;
-
     /** Reset command. */
     private boolean _reset;
 
-    /** Map the name and Id of each commit. */
-    private HashMap<String, String> _branches;
-
-    /** Map the file's name and file's contents. */
-    private HashMap<String, String> _pairs;
-
-    /** List of files that existed. */
-    private ArrayList<String> _files;
+    /** The branches and the current branch. */
+    private final Refs _refs = new Refs();
 
-    /** The pointer that pointing to the current commit. */
-    private String _head;
+    /** The files staged for addition and removal. */
+    private final Stage _stage = new Stage();
 
     /** Return the current head in branches. */
     public String getCurrHead() {
-        return _branches.get(_head);
+        return _refs.branches().get(_refs.head());
     }
 }
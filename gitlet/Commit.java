@@ -1,10 +1,17 @@
 package gitlet;
 
 import java.util.HashMap;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Locale;
 
 /** Commit class that handles commit for Gitlet.
  * @author Ellsa Fiorenza
@@ -13,29 +20,115 @@ import java.util.Date;
 public class Commit implements Serializable {
 
     /** Constructor for commit class. Takes in String MESSAGE,
-     *  commit message, key-value pair of ADDEDFILES from prev commit,
-     *  ArrayList of PARENTS, boolean INIT. True if
+     *  commit message, the UID of the root Tree of its files (null if it
+     *  has none), ArrayList of PARENTS, boolean INIT. True if
      *  it's an initial commit. Otherwise, false. */
-    public Commit(String message, HashMap<String, String> addedFiles,
+    public Commit(String message, String tree,
                   String[] parents, boolean init) {
         _message = message;
-        _addedFiles = addedFiles;
+        _tree = tree;
         _parents = parents;
         if (!init) {
-            Date date = new Date();
-            _dateTime = UTCDATE.format(date) + " -0800";
-            _dateTime = "Thu Jan 1 00:00:00 1970 -0800";
+            _dateTime = new SimpleDateFormat(DATE_FORMAT, Locale.US)
+                .format(new Date());
         } else {
             _dateTime = "Thu Jan 1 00:00:00 1970 -0800";
         }
         _commitID = makeUniqueID();
     }
 
+    /** A commit to be filled in by decode. */
+    private Commit() {
+    }
+
+    /** Return this commit in the compact format read by decode: a
+     *  version byte, the UID, message and date, the parents as raw UIDs,
+     *  and then a flag byte followed, if set, by the UID of its root
+     *  tree. */
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.write(Utils.uidToBytes(_commitID));
+            writeString(out, _message);
+            writeString(out, _dateTime);
+            out.writeByte(_parents == null ? 0 : _parents.length);
+            if (_parents != null) {
+                for (String p : _parents) {
+                    out.write(Utils.uidToBytes(p));
+                }
+            }
+            String tree = getTree();
+            out.writeByte(tree == null ? 0 : 1);
+            if (tree != null) {
+                out.write(Utils.uidToBytes(tree));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return the commit encoded in DATA by encode. Its file map is only
+     *  built from its tree the first time getCommitFiles is called, so
+     *  commands that only walk or print history never pay for it. */
+    static Commit decode(byte[] data) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        int format = buf.get();
+        if (format != FORMAT) {
+            throw Utils.error("unknown commit format");
+        }
+        Commit result = new Commit();
+        result._commitID = readUid(buf);
+        result._message = readString(buf);
+        result._dateTime = readString(buf);
+        int n = buf.get();
+        if (n > 0) {
+            result._parents = new String[n];
+            for (int i = 0; i < n; i += 1) {
+                result._parents[i] = readUid(buf);
+            }
+        }
+        if (buf.get() != 0) {
+            result._tree = readUid(buf);
+        }
+        return result;
+    }
+
+    /** Return true iff DATA is a commit written with Java serialization,
+     *  as all commits were before encode existed. */
+    static boolean isSerialized(byte[] data) {
+        return data.length >= 2 && (data[0] & 0xff) == 0xac
+            && (data[1] & 0xff) == 0xed;
+    }
+
+    /** Write S to OUT as its length and UTF-8 bytes. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return the string written by writeString at BUF's position. */
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Return the raw UID at BUF's position as hexadecimal. */
+    private static String readUid(ByteBuffer buf) {
+        byte[] raw = new byte[Utils.UID_BYTES];
+        buf.get(raw);
+        return Utils.bytesToUid(raw, 0);
+    }
+
     /** Make a new unique ID for this commit. Return the new ID. */
     private String makeUniqueID() {
         String str = "";
-        if (_addedFiles != null) {
-            str = _addedFiles.toString();
+        if (_tree != null) {
+            str = _tree;
         }
         return Utils.sha1(_message, str, _dateTime, Arrays.toString(_parents));
     }
@@ -47,18 +140,28 @@ public class Commit implements Serializable {
     private String _message;
 
     /** Key-Value pairs of the name of the file(path)
-     *  and the content of the file. */
+     *  and the content of the file. Commits made before trees existed
+     *  store their files here; others fill it in from _tree on demand. */
     private HashMap<String, String> _addedFiles;
 
+    /** UID of the root tree of the files, or null if there are none or
+     *  it has not been built yet for a commit made before trees. */
+    private String _tree;
+
     /** List of parents. */
     private String[] _parents;
 
     /** Unique commit Id. */
     private String _commitID;
 
-    /** Date format. */
-    public static final SimpleDateFormat UTCDATE =
-            new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy");
+    /** Version of the format written by encode. */
+    private static final byte FORMAT = 2;
+
+    /** Serialization version of commits written before encode existed. */
+    private static final long serialVersionUID = 4260183642118075899L;
+
+    /** Format of commit dates. */
+    static final String DATE_FORMAT = "EEE MMM d HH:mm:ss yyyy Z";
 
     /** Return the message committed. */
     public String getMessage() {
@@ -70,12 +173,39 @@ public class Commit implements Serializable {
         return _dateTime;
     }
 
+    /** Return the time of the commit, in milliseconds since the epoch,
+     *  as given by its date, or 0 if the date cannot be read. */
+    public long getTime() {
+        try {
+            return new SimpleDateFormat(DATE_FORMAT, Locale.US)
+                .parse(_dateTime).getTime();
+        } catch (ParseException excp) {
+            return 0;
+        }
+    }
+
     /** Get function for key-value pair of commitFiles. Return HashMap of
      * commitFiles. */
     public HashMap<String, String> getCommitFiles() {
+        if (_addedFiles == null && _tree != null) {
+            _addedFiles = Tree.flatten(_tree);
+        }
         return _addedFiles;
     }
 
+    /** Return the UID of the root tree of this commit's files, or null if
+     *  it has none. For a commit made before trees existed the tree is
+     *  built and stored on first use. */
+    public String getTree() {
+        if (_tree == null) {
+            HashMap<String, String> files = getCommitFiles();
+            if (files != null && !files.isEmpty()) {
+                _tree = Tree.update(null, files);
+            }
+        }
+        return _tree;
+    }
+
     /** Return the list of parents. */
     public String[] getParents() {
         return _parents;
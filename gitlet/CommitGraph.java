@@ -0,0 +1,384 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** The commit graph of a Gitlet repository: for every commit, its
+ *  parents, its generation number (1 for a root commit, otherwise one
+ *  more than the largest generation of its parents) and the time it was
+ *  made. The graph lives in .gitlet/commit-graph, to which one record is
+ *  appended per new commit, and is read once per run, so walking history
+ *  never has to deserialize commits. Alongside it, .gitlet/commit-graph-
+ *  paths holds for each new commit a BloomFilter of the paths it changed,
+ *  read only by walks that follow the history of a path.
+ *  @author Ellsa Fiorenza
+ */
+class CommitGraph {
+
+    /** The commit-graph file. */
+    static final File FILE = Utils.join(ObjectStore.GITLET, "commit-graph");
+
+    /** The changed-paths file of the commit graph. */
+    static final File PATHS =
+        Utils.join(ObjectStore.GITLET, "commit-graph-paths");
+
+    /** Largest number of changed paths, directories included, for which
+     *  a commit gets a changed-paths filter. */
+    static final int MAX_CHANGED_PATHS = 512;
+
+    /** Return the graph of the current repository, loading it on first
+     *  use. */
+    static CommitGraph get() {
+        if (_graph == null) {
+            _graph = new CommitGraph();
+            if (FILE.isFile()) {
+                byte[] data = Utils.readContents(FILE);
+                _graph.load(data, (int) Math.min(data.length,
+                                                 Journal.length(FILE)));
+            } else {
+                _graph.rebuild();
+            }
+        }
+        return _graph;
+    }
+
+    /** Return true iff the graph contains the commit with UID ID. */
+    boolean contains(String id) {
+        return _nodes.containsKey(id);
+    }
+
+    /** Return the parents of the commit with UID ID, first parent first.
+     *  A root commit has no parents. */
+    String[] parents(String id) {
+        return node(id).parents;
+    }
+
+    /** Return the first parent of the commit with UID ID, or null if it
+     *  is a root commit. */
+    String parent(String id) {
+        String[] parents = parents(id);
+        return parents.length == 0 ? null : parents[0];
+    }
+
+    /** Return the generation number of the commit with UID ID. */
+    int generation(String id) {
+        return node(id).generation;
+    }
+
+    /** Return the time, in milliseconds since the epoch, of the commit
+     *  with UID ID, as given by its date. */
+    long time(String id) {
+        return node(id).time;
+    }
+
+    /** Return the number of commits in the graph. */
+    int size() {
+        return _nodes.size();
+    }
+
+    /** Return the UIDs of the commits that start with PREFIX, in sorted
+     *  order, stopping after LIMIT of them. The search is a binary search
+     *  over the sorted UIDs, so its cost does not depend on the number of
+     *  commits. */
+    List<String> withPrefix(String prefix, int limit) {
+        if (_sorted == null) {
+            _sorted = _nodes.keySet().toArray(new String[0]);
+            Arrays.sort(_sorted);
+        }
+        ArrayList<String> result = new ArrayList<>();
+        int pos = Arrays.binarySearch(_sorted, prefix);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        for (; pos < _sorted.length && result.size() < limit
+                 && _sorted[pos].startsWith(prefix); pos += 1) {
+            result.add(_sorted[pos]);
+        }
+        return result;
+    }
+
+    /** Add COMMIT, whose parents must already be in the graph, and
+     *  append its record to the commit-graph file. */
+    void add(Commit commit) {
+        String id = commit.getCommitID();
+        if (contains(id)) {
+            return;
+        }
+        Node node = insert(id, commit.getParents(), commit.getTime());
+        Journal.appending(FILE);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(FILE, true)))) {
+            out.write(encode(id, node));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        addFilter(commit);
+    }
+
+    /** Forget every commit whose UID is not in LIVE, which must hold all
+     *  the parents of its members, and rewrite the commit-graph and
+     *  changed-paths files accordingly. The new files replace the old
+     *  ones when the command's Journal commits. */
+    void retain(Set<String> live) {
+        filters().keySet().retainAll(live);
+        _nodes.keySet().retainAll(live);
+        _sorted = null;
+        try {
+            File graph = File.createTempFile("commit-graph", ".tmp",
+                                             ObjectStore.GITLET);
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(graph)))) {
+                for (HashMap.Entry<String, Node> e : _nodes.entrySet()) {
+                    out.write(encode(e.getKey(), e.getValue()));
+                }
+            }
+            File paths = File.createTempFile("commit-graph-paths", ".tmp",
+                                             ObjectStore.GITLET);
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(paths)))) {
+                for (HashMap.Entry<String, byte[]> e : _filters.entrySet()) {
+                    out.write(Utils.uidToBytes(e.getKey()));
+                    out.writeInt(e.getValue().length);
+                    out.write(e.getValue());
+                }
+            }
+            Journal.renaming(graph, FILE);
+            Journal.renaming(paths, PATHS);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return false iff the commit with UID ID certainly has the same
+     *  version of the file or directory PATH as its first parent, as told
+     *  by its changed-paths filter. Commits without a filter, such as
+     *  those made before filters existed or that changed more than
+     *  MAX_CHANGED_PATHS paths, may have changed any path. */
+    boolean mayChange(String id, String path) {
+        byte[] filter = filters().get(id);
+        return filter == null || filter.length == 0
+            || BloomFilter.mayContain(filter, path);
+    }
+
+    /** Compute the changed-paths filter of the new commit COMMIT and
+     *  append it to the changed-paths file: a BloomFilter of every path
+     *  whose version differs from the first parent's, and of every
+     *  directory holding one, or an empty filter if there are too many
+     *  of those. */
+    private void addFilter(Commit commit) {
+        String parent = commit.getParentID();
+        String from = null;
+        if (parent != null) {
+            Commit p = ObjectStore.readCommit(parent);
+            from = p == null ? null : p.getTree();
+        }
+        HashSet<String> paths = new HashSet<>();
+        for (TreeDiff.Change c : TreeDiff.diff(from, commit.getTree())) {
+            String path = c.path();
+            while (paths.add(path)) {
+                int k = path.lastIndexOf(Tree.SEPARATOR);
+                if (k < 0) {
+                    break;
+                }
+                path = path.substring(0, k);
+            }
+        }
+        byte[] filter = paths.size() > MAX_CHANGED_PATHS ? new byte[0]
+            : BloomFilter.build(paths);
+        Journal.appending(PATHS);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(
+                     new FileOutputStream(PATHS, true)))) {
+            out.write(Utils.uidToBytes(commit.getCommitID()));
+            out.writeInt(filter.length);
+            out.write(filter);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_filters != null) {
+            _filters.put(commit.getCommitID(), filter);
+        }
+    }
+
+    /** Return the changed-paths filters by commit UID, reading them on
+     *  first use. Only the part of the file that Journal.length covers is
+     *  read. */
+    private HashMap<String, byte[]> filters() {
+        if (_filters == null) {
+            _filters = new HashMap<>();
+            byte[] data =
+                PATHS.isFile() ? Utils.readContents(PATHS) : new byte[0];
+            ByteBuffer buf = ByteBuffer.wrap(data, 0, (int) Math.min(
+                data.length, Journal.length(PATHS)));
+            byte[] raw = new byte[Utils.UID_BYTES];
+            while (buf.remaining() >= Utils.UID_BYTES + 4) {
+                buf.get(raw);
+                int n = buf.getInt();
+                if (n < 0 || buf.remaining() < n) {
+                    break;
+                }
+                byte[] filter = new byte[n];
+                buf.get(filter);
+                _filters.put(Utils.bytesToUid(raw, 0), filter);
+            }
+        }
+        return _filters;
+    }
+
+    /** Return the node for ID, failing if the graph does not hold it. */
+    private Node node(String id) {
+        Node result = _nodes.get(id);
+        if (result == null) {
+            throw Utils.error("commit %s is not in the commit graph", id);
+        }
+        return result;
+    }
+
+    /** Add the commit ID with parents PARENTS (possibly null) and time TIME
+     *  to the graph and return its node. The commit-graph file is not
+     *  written. */
+    Node insert(String id, String[] parents, long time) {
+        String[] copy = parents == null ? new String[0] : parents.clone();
+        int generation = 1;
+        for (String p : copy) {
+            generation = Math.max(generation, generation(p) + 1);
+        }
+        Node node = new Node(copy, generation, time);
+        _nodes.put(id, node);
+        _sorted = null;
+        return node;
+    }
+
+    /** Read the records in the first LENGTH bytes of DATA. A truncated
+     *  last record is ignored. */
+    private void load(byte[] data, int length) {
+        ByteBuffer buf = ByteBuffer.wrap(data, 0, length);
+        byte[] raw = new byte[Utils.UID_BYTES];
+        while (buf.remaining() >= Utils.UID_BYTES + 13) {
+            buf.get(raw);
+            String id = Utils.bytesToUid(raw, 0);
+            int generation = buf.getInt();
+            long time = buf.getLong();
+            int n = buf.get() & 0xff;
+            if (buf.remaining() < n * Utils.UID_BYTES) {
+                break;
+            }
+            String[] parents = new String[n];
+            for (int i = 0; i < n; i += 1) {
+                buf.get(raw);
+                parents[i] = Utils.bytesToUid(raw, 0);
+            }
+            _nodes.put(id, new Node(parents, generation, time));
+        }
+    }
+
+    /** Build the graph from every stored commit, with the dates recorded
+     *  in them, and write the commit-graph file, for repositories created
+     *  before it existed, or an empty one if there are no commits yet.
+     *  The file is written whole and renamed into place, since a process
+     *  that only reads may be the one to build it. */
+    private void rebuild() {
+        for (String id : ObjectStore.commitIDs()) {
+            rebuild(id);
+        }
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (HashMap.Entry<String, Node> e : _nodes.entrySet()) {
+            data.writeBytes(encode(e.getKey(), e.getValue()));
+        }
+        Utils.writeAtomically(FILE, data.toByteArray());
+    }
+
+    /** Add the commit with UID ID and all its ancestors to the graph,
+     *  parents before children. */
+    private void rebuild(String id) {
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        HashMap<String, Commit> pending = new HashMap<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            String top = stack.peek();
+            if (contains(top)) {
+                stack.pop();
+                continue;
+            }
+            Commit commit = pending.get(top);
+            if (commit == null) {
+                commit = ObjectStore.readCommit(top);
+                if (commit == null) {
+                    throw Utils.error("missing commit %s", top);
+                }
+                pending.put(top, commit);
+                for (String p : parents(commit)) {
+                    if (!contains(p)) {
+                        stack.push(p);
+                    }
+                }
+            } else {
+                stack.pop();
+                insert(top, parents(commit), commit.getTime());
+                pending.remove(top);
+            }
+        }
+    }
+
+    /** Return the parents of COMMIT, first parent first. */
+    private static String[] parents(Commit commit) {
+        return commit.getParents() == null
+            ? new String[0] : commit.getParents();
+    }
+
+    /** Return the commit-graph record for commit ID with node NODE. */
+    private static byte[] encode(String id, Node node) {
+        ByteBuffer buf = ByteBuffer.allocate(Utils.UID_BYTES + 13
+                             + node.parents.length * Utils.UID_BYTES);
+        buf.put(Utils.uidToBytes(id));
+        buf.putInt(node.generation).putLong(node.time);
+        buf.put((byte) node.parents.length);
+        for (String p : node.parents) {
+            buf.put(Utils.uidToBytes(p));
+        }
+        return buf.array();
+    }
+
+    /** What the graph records about one commit. */
+    private static class Node {
+        /** A node with parents PARENTS, generation GENERATION and time
+         *  TIME. */
+        Node(String[] parents, int generation, long time) {
+            this.parents = parents;
+            this.generation = generation;
+            this.time = time;
+        }
+
+        /** UIDs of the parents. */
+        private final String[] parents;
+        /** Generation number. */
+        private final int generation;
+        /** Commit time in milliseconds. */
+        private final long time;
+    }
+
+    /** Maps commit UIDs to their nodes. */
+    private final HashMap<String, Node> _nodes = new HashMap<>();
+
+    /** The UIDs of all commits in sorted order, or null if they need to
+     *  be recomputed. */
+    private String[] _sorted;
+
+    /** The graph returned by get(). */
+    private static CommitGraph _graph;
+
+    /** Changed-paths filters by commit UID, once read. */
+    private HashMap<String, byte[]> _filters;
+}
@@ -0,0 +1,622 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/** What global-log and find need to know about every commit, kept apart
+ *  from the commits themselves. The commit log, .gitlet/commit-log, has
+ *  one record per commit, in the order they were made: its UID, parents,
+ *  date and message. The message index, .gitlet/message-index, has one
+ *  fixed-size record for each commit's message and for each distinct word
+ *  in it, holding a hash of the message or word and the position of the
+ *  commit's record in the commit log. Both files are appended to as
+ *  commits are written. Once more than MAX_TAIL index records have been
+ *  appended since, the committed ones are merged into the sorted index,
+ *  .gitlet/message-index-sorted, which holds the records ordered by kind
+ *  and hash after the length of the part of the message index it covers,
+ *  and is replaced whole. global-log reads the commit log straight
+ *  through; find binary-searches the sorted index, scans the short tail
+ *  of the message index, and then reads the few commit log records whose
+ *  hashes match.
+ *  @author Ellsa Fiorenza
+ */
+class CommitLog {
+
+    /** The commit log file. */
+    static final File FILE = Utils.join(ObjectStore.GITLET, "commit-log");
+
+    /** The message index file. */
+    static final File INDEX =
+        Utils.join(ObjectStore.GITLET, "message-index");
+
+    /** The sorted message index file. */
+    static final File SORTED =
+        Utils.join(ObjectStore.GITLET, "message-index-sorted");
+
+    /** Append the record of COMMIT, which has just been stored. */
+    static void add(Commit commit) {
+        if (ensure()) {
+            return;
+        }
+        sortIndex();
+        Journal.appending(FILE);
+        Journal.appending(INDEX);
+        try (Appender out = new Appender(FILE, INDEX)) {
+            out.append(commit);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Pass each commit, in the order the commits were made, to
+     *  ACTION. Only one commit is in memory at a time. */
+    static void forEach(Consumer<Entry> action) {
+        ensure();
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(FILE)))) {
+            long left = Journal.length(FILE);
+            byte[] record;
+            while ((record = next(in, left)) != null) {
+                left -= 4 + record.length;
+                action.accept(new Entry(record));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the next record of the commit log IN, of which LEFT bytes
+     *  remain to be read, or null if there is no complete record. */
+    private static byte[] next(DataInputStream in, long left)
+        throws IOException {
+        if (left < 4) {
+            return null;
+        }
+        int n = in.readInt();
+        if (n < 0 || n > left - 4) {
+            return null;
+        }
+        byte[] result = new byte[n];
+        in.readFully(result);
+        return result;
+    }
+
+    /** Forget every commit whose UID is not in LIVE, rewriting the commit
+     *  log and message indexes. The new files replace the old ones when
+     *  the command's Journal commits. */
+    static void retain(Set<String> live) {
+        ensure();
+        try {
+            File log = File.createTempFile("commit-log", ".tmp",
+                                           ObjectStore.GITLET);
+            File index = File.createTempFile("message-index", ".tmp",
+                                             ObjectStore.GITLET);
+            File sorted = File.createTempFile("message-index-sorted",
+                                              ".tmp", ObjectStore.GITLET);
+            try (DataInputStream in = new DataInputStream(
+                     new BufferedInputStream(new FileInputStream(FILE)));
+                 Appender out = new Appender(log, index)) {
+                long left = Journal.length(FILE);
+                byte[] record;
+                while ((record = next(in, left)) != null) {
+                    left -= 4 + record.length;
+                    Entry e = new Entry(record);
+                    if (live.contains(e.id())) {
+                        out.append(record, e.message());
+                    }
+                }
+            }
+            sortAll(index, sorted);
+            Journal.renaming(sorted, SORTED);
+            Journal.renaming(index, INDEX);
+            Journal.renaming(log, FILE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the commits whose message is exactly MESSAGE, in the order
+     *  they were made. */
+    static List<Entry> withMessage(String message) {
+        ArrayList<Entry> result = new ArrayList<>();
+        for (Entry e : candidates(MESSAGE, Arrays.asList(message))) {
+            if (e.message().equals(message)) {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    /** Return the commits whose message contains every word of WORDS,
+     *  ignoring case, in the order they were made. A word is a run of
+     *  letters and digits. */
+    static List<Entry> withWords(String words) {
+        Set<String> wanted = words(words);
+        ArrayList<Entry> result = new ArrayList<>();
+        if (wanted.isEmpty()) {
+            return result;
+        }
+        for (Entry e : candidates(WORD, wanted)) {
+            if (words(e.message()).containsAll(wanted)) {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    /** Return the commits whose message contains TEXT, in the order they
+     *  were made. Every word of TEXT other than a first or last one that
+     *  may be part of a longer word in the message must be a word of the
+     *  message, so the index narrows the search when TEXT has such a
+     *  word; otherwise the whole commit log is read. */
+    static List<Entry> containing(String text) {
+        ArrayList<Entry> result = new ArrayList<>();
+        Set<String> inner = innerWords(text);
+        if (inner.isEmpty()) {
+            forEach(e -> {
+                if (e.message().contains(text)) {
+                    result.add(e);
+                }
+            });
+        } else {
+            for (Entry e : candidates(WORD, inner)) {
+                if (e.message().contains(text)) {
+                    result.add(e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the commits with an index record of kind KIND for every one
+     *  of KEYS, read from the commit log, in the order they were made.
+     *  Hashes may collide, so callers check the commits returned. */
+    private static List<Entry> candidates(byte kind,
+                                          Iterable<String> keys) {
+        ensure();
+        ArrayList<TreeSet<Long>> matches = new ArrayList<>();
+        ArrayList<Long> wanted = new ArrayList<>();
+        for (String key : keys) {
+            wanted.add(key(kind, hash(key)));
+            matches.add(new TreeSet<>());
+        }
+        ArrayList<Entry> result = new ArrayList<>();
+        try {
+            long covered = 0;
+            if (SORTED.isFile()) {
+                try (FileChannel in = FileChannel.open(SORTED.toPath())) {
+                    if (in.size() >= HEADER) {
+                        ByteBuffer index =
+                            in.map(FileChannel.MapMode.READ_ONLY, 0,
+                                   in.size());
+                        covered = index.getLong(0);
+                        for (int i = 0; i < wanted.size(); i += 1) {
+                            lookup(index, wanted.get(i), matches.get(i));
+                        }
+                    }
+                }
+            }
+            for (long[] r : readIndex(INDEX, covered,
+                                      Journal.length(INDEX))) {
+                for (int i = 0; i < wanted.size(); i += 1) {
+                    if (wanted.get(i) == r[0]) {
+                        matches.get(i).add(r[1]);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        TreeSet<Long> positions = matches.get(0);
+        for (TreeSet<Long> m : matches) {
+            positions.retainAll(m);
+        }
+        long end = Journal.length(FILE);
+        try (FileChannel in = FileChannel.open(FILE.toPath())) {
+            for (long pos : positions) {
+                Entry e = read(in, pos, end);
+                if (e != null) {
+                    result.add(e);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Add to POSITIONS the commit log positions held by the records of
+     *  the sorted index INDEX whose key is KEY, found by binary search. */
+    private static void lookup(ByteBuffer index, long key,
+                               Set<Long> positions) {
+        int size = (index.limit() - HEADER) / INDEX_RECORD;
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(index, mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (; lo < size && key(index, lo) == key; lo += 1) {
+            positions.add(index.getLong(HEADER + lo * INDEX_RECORD + 5));
+        }
+    }
+
+    /** Return the key of the record at position POS of the sorted index
+     *  INDEX. */
+    private static long key(ByteBuffer index, int pos) {
+        int base = HEADER + pos * INDEX_RECORD;
+        return key(index.get(base), index.getInt(base + 1));
+    }
+
+    /** Return the key by which index records of kind KIND for keys with
+     *  hash HASH are sorted. */
+    private static long key(byte kind, int hash) {
+        return ((long) kind << 32) | (hash & 0xffffffffL);
+    }
+
+    /** Return the length of the part of the message index that the sorted
+     *  index covers. */
+    private static long covered() {
+        if (!SORTED.isFile() || SORTED.length() < HEADER) {
+            return 0;
+        }
+        try (FileChannel in = FileChannel.open(SORTED.toPath())) {
+            ByteBuffer buf = ByteBuffer.allocate(HEADER);
+            Utils.readFully(in, buf, 0);
+            return buf.getLong(0);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Merge the records of the message index that the sorted index does
+     *  not cover into it, if there are more than MAX_TAIL of them. Only
+     *  records of committed commands are merged, so a crash cannot leave
+     *  the sorted index covering a part of the message index that recover
+     *  cuts off. */
+    private static void sortIndex() {
+        long covered = covered();
+        long end = Journal.committedLength(INDEX);
+        if (end - covered <= (long) MAX_TAIL * INDEX_RECORD) {
+            return;
+        }
+        try {
+            File sorted = File.createTempFile("message-index-sorted",
+                                              ".tmp", ObjectStore.GITLET);
+            merge(SORTED, readIndex(INDEX, covered, end), end, sorted);
+            Utils.rename(sorted, SORTED);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write to SORTED a sorted index holding every record of the new
+     *  message index INDEX, and empty INDEX. */
+    private static void sortAll(File index, File sorted) throws IOException {
+        merge(null, readIndex(index, 0, index.length()), 0, sorted);
+        Utils.writeContents(index, new byte[0]);
+    }
+
+    /** Return the index records, as pairs of key and commit log position,
+     *  in the message index INDEX from byte FROM to byte TO. */
+    private static long[][] readIndex(File index, long from, long to)
+        throws IOException {
+        int n = (int) (Math.max(0, to - from) / INDEX_RECORD);
+        long[][] result = new long[n][];
+        if (n == 0) {
+            return result;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(n * INDEX_RECORD);
+        try (FileChannel in = FileChannel.open(index.toPath())) {
+            Utils.readFully(in, buf, from);
+        }
+        buf.flip();
+        for (int i = 0; i < n; i += 1) {
+            long key = key(buf.get(), buf.getInt());
+            result[i] = new long[] { key, buf.getLong() };
+        }
+        return result;
+    }
+
+    /** Write to TARGET a sorted index holding the records of the sorted
+     *  index SORTED, unless it is null or missing, and the records ADDED,
+     *  and covering the first COVERED bytes of the message index. */
+    private static void merge(File sorted, long[][] added, long covered,
+                              File target) throws IOException {
+        Arrays.sort(added, INDEX_ORDER);
+        int i = 0;
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(target)))) {
+            out.writeLong(covered);
+            if (sorted != null && sorted.length() >= HEADER) {
+                try (DataInputStream in = new DataInputStream(
+                         new BufferedInputStream(
+                             new FileInputStream(sorted)))) {
+                    in.readLong();
+                    long n = (sorted.length() - HEADER) / INDEX_RECORD;
+                    for (; n > 0; n -= 1) {
+                        long key = key(in.readByte(), in.readInt());
+                        long[] r = { key, in.readLong() };
+                        for (; i < added.length
+                                 && INDEX_ORDER.compare(added[i], r) < 0;
+                             i += 1) {
+                            write(out, added[i]);
+                        }
+                        write(out, r);
+                    }
+                }
+            }
+            for (; i < added.length; i += 1) {
+                write(out, added[i]);
+            }
+        }
+        Utils.sync(target);
+    }
+
+    /** Write the index record R, a key and a commit log position, to
+     *  OUT. */
+    private static void write(DataOutputStream out, long[] r)
+        throws IOException {
+        out.writeByte((int) (r[0] >>> 32));
+        out.writeInt((int) r[0]);
+        out.writeLong(r[1]);
+    }
+
+    /** Return the commit whose record starts at POS in IN, or null if
+     *  there is no complete record there before END. */
+    private static Entry read(FileChannel in, long pos, long end)
+        throws IOException {
+        end = Math.min(end, in.size());
+        if (pos + 4 > end) {
+            return null;
+        }
+        ByteBuffer length = ByteBuffer.allocate(4);
+        Utils.readFully(in, length, pos);
+        int n = length.getInt(0);
+        if (n < 0 || pos + 4 + n > end) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(n);
+        Utils.readFully(in, record, pos + 4);
+        return new Entry(record.array());
+    }
+
+    /** Create the commit log and message index from every stored commit,
+     *  if they do not exist yet, and return true iff they were created.
+     *  The files are renamed into place once complete, since a process
+     *  that only reads may be the one to create them. */
+    private static boolean ensure() {
+        if (FILE.isFile()) {
+            return false;
+        }
+        try {
+            File log = File.createTempFile("commit-log", ".tmp",
+                                           ObjectStore.GITLET);
+            File index = File.createTempFile("message-index", ".tmp",
+                                             ObjectStore.GITLET);
+            File sorted = File.createTempFile("message-index-sorted",
+                                              ".tmp", ObjectStore.GITLET);
+            try (Appender out = new Appender(log, index)) {
+                for (String id : ObjectStore.commitIDs()) {
+                    out.append(ObjectStore.readCommit(id));
+                }
+            }
+            sortAll(index, sorted);
+            Utils.rename(sorted, SORTED);
+            Utils.rename(index, INDEX);
+            Utils.rename(log, FILE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return true;
+    }
+
+    /** Return the commit log record of COMMIT. */
+    private static byte[] encode(Commit commit) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        String[] parents = commit.getParents() == null
+            ? new String[0] : commit.getParents();
+        out.write(Utils.uidToBytes(commit.getCommitID()));
+        out.writeByte(parents.length);
+        for (String p : parents) {
+            out.write(Utils.uidToBytes(p));
+        }
+        writeString(out, commit.getDateTime());
+        writeString(out, commit.getMessage());
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /** Write S to OUT as its length and UTF-8 bytes. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return the distinct words of TEXT, in lower case. */
+    private static Set<String> words(String text) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (String w : text.toLowerCase(Locale.ROOT).split(NON_WORD)) {
+            if (!w.isEmpty()) {
+                result.add(w);
+            }
+        }
+        return result;
+    }
+
+    /** Return the words of TEXT that are whole words of any message
+     *  containing TEXT: all but a first word that TEXT does not begin
+     *  in front of, and a last word that TEXT does not end after. */
+    private static Set<String> innerWords(String text) {
+        String[] w = text.toLowerCase(Locale.ROOT)
+            .split(NON_WORD, -1);
+        HashSet<String> result = new HashSet<>();
+        for (int i = 1; i < w.length - 1; i += 1) {
+            if (!w[i].isEmpty()) {
+                result.add(w[i]);
+            }
+        }
+        return result;
+    }
+
+    /** Return the index hash of KEY. */
+    private static int hash(String key) {
+        return key.hashCode();
+    }
+
+    /** Separates the words of a message. */
+    private static final String NON_WORD = "[^\\p{L}\\p{N}]+";
+
+    /** Index record kind for a whole message. */
+    private static final byte MESSAGE = 0;
+
+    /** Index record kind for a word of a message. */
+    private static final byte WORD = 1;
+
+    /** Size of an index record: kind, hash and position. */
+    private static final int INDEX_RECORD = 1 + 4 + 8;
+
+    /** Size of the sorted index header: the length of the part of the
+     *  message index it covers. */
+    private static final int HEADER = 8;
+
+    /** Most index records left unsorted at the end of the message
+     *  index. */
+    private static final int MAX_TAIL = 4096;
+
+    /** Order of the records of the sorted index: by key, then by commit
+     *  log position. */
+    private static final Comparator<long[]> INDEX_ORDER =
+        Comparator.<long[]>comparingLong(r -> r[0])
+        .thenComparingLong(r -> r[1]);
+
+    /** Appends commit records to a commit log and message index. */
+    private static class Appender implements AutoCloseable {
+        /** An appender to the commit log LOG and message index INDEX. */
+        Appender(File log, File index) throws IOException {
+            _pos = log.length();
+            _log = new DataOutputStream(new BufferedOutputStream(
+                       new FileOutputStream(log, true)));
+            _index = new DataOutputStream(new BufferedOutputStream(
+                         new FileOutputStream(index, true)));
+        }
+
+        /** Append the records of COMMIT. */
+        void append(Commit commit) throws IOException {
+            append(encode(commit), commit.getMessage());
+        }
+
+        /** Append the commit log record RECORD, of a commit whose message
+         *  is MESSAGE, and its index records. */
+        void append(byte[] record, String message) throws IOException {
+            _log.writeInt(record.length);
+            _log.write(record);
+            index(MESSAGE, message);
+            for (String w : words(message)) {
+                index(WORD, w);
+            }
+            _pos += 4 + record.length;
+        }
+
+        /** Append an index record of kind KIND for KEY and the current
+         *  commit. */
+        private void index(byte kind, String key) throws IOException {
+            _index.writeByte(kind);
+            _index.writeInt(hash(key));
+            _index.writeLong(_pos);
+        }
+
+        @Override
+        public void close() throws IOException {
+            _log.close();
+            _index.close();
+        }
+
+        /** Position in the commit log of the next record. */
+        private long _pos;
+        /** The commit log. */
+        private final DataOutputStream _log;
+        /** The message index. */
+        private final DataOutputStream _index;
+    }
+
+    /** One commit as recorded in the commit log. */
+    static class Entry {
+        /** The commit whose commit log record is RECORD. */
+        Entry(byte[] record) {
+            ByteBuffer buf = ByteBuffer.wrap(record);
+            byte[] raw = new byte[Utils.UID_BYTES];
+            buf.get(raw);
+            _id = Utils.bytesToUid(raw, 0);
+            _parents = new String[buf.get()];
+            for (int i = 0; i < _parents.length; i += 1) {
+                buf.get(raw);
+                _parents[i] = Utils.bytesToUid(raw, 0);
+            }
+            _date = readString(buf);
+            _message = readString(buf);
+        }
+
+        /** Return the UID of the commit. */
+        String id() {
+            return _id;
+        }
+
+        /** Return the UIDs of the commit's parents, first parent first. */
+        String[] parents() {
+            return _parents;
+        }
+
+        /** Return the commit's date. */
+        String date() {
+            return _date;
+        }
+
+        /** Return the commit's message. */
+        String message() {
+            return _message;
+        }
+
+        /** Return the string written by writeString at BUF's position. */
+        private static String readString(ByteBuffer buf) {
+            byte[] bytes = new byte[buf.getInt()];
+            buf.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /** UID of the commit. */
+        private final String _id;
+        /** UIDs of the parents. */
+        private final String[] _parents;
+        /** Date of the commit. */
+        private final String _date;
+        /** Message of the commit. */
+        private final String _message;
+    }
+}
@@ -0,0 +1,323 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Fault-injection tests of the Journal. A command is run on a copy of a
+ *  repository once for each crash point it reaches (see
+ *  Utils.crashPoint), halting there as if the machine had crashed, and
+ *  the append-only files whose lengths are recorded are then given torn
+ *  records at their ends, as a crash in the middle of an append would
+ *  leave them. Each time, the repository must still be readable, the
+ *  next command must recover it, and the crashed command must have taken
+ *  effect entirely or not at all. Commands run in child processes,
+ *  started in scratch directories, through main.
+ *  @author Ellsa Fiorenza
+ */
+public class CrashTest {
+
+    /** Run the Gitlet command ARGS on the repository in the current
+     *  directory. */
+    public static void main(String... args) {
+        if (args[0].equals("init")) {
+            new Commands();
+            return;
+        }
+        Commands c = Commands.open();
+        String[] rest = Arrays.copyOfRange(args, 1, args.length);
+        try {
+            switch (args[0]) {
+            case "add":
+                c.add(rest);
+                break;
+            case "commit":
+                c.commit(args[1], false, null);
+                break;
+            case "branch":
+                c.branch(args[1]);
+                break;
+            case "checkout":
+                c.checkoutBranch(args[1]);
+                break;
+            case "merge":
+                c.merge(args[1]);
+                break;
+            case "rm-branch":
+                c.rmBranch(args[1]);
+                break;
+            case "gc":
+                c.gc();
+                break;
+            case "log":
+                c.log(rest);
+                break;
+            case "global-log":
+                c.globalLog();
+                break;
+            default:
+                throw Utils.error("No command with that name exists.");
+            }
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+        c.save();
+    }
+
+    /** The first commit after init is crashed. */
+    @Test
+    public void firstCommit() throws IOException {
+        File repo = scratch();
+        gitlet(repo, "init");
+        write(repo, "f.txt", "one\n");
+        gitlet(repo, "add", "f.txt");
+        crashEach(repo, messages("initial commit"),
+                  messages("initial commit", "next"), "commit", "next");
+    }
+
+    /** A commit that adds one file and changes another is crashed. */
+    @Test
+    public void commit() throws IOException {
+        File repo = scratch();
+        gitlet(repo, "init");
+        write(repo, "f.txt", "one\n");
+        gitlet(repo, "add", "f.txt");
+        gitlet(repo, "commit", "base");
+        write(repo, "f.txt", "two\n");
+        write(repo, "d/g.txt", "new\n");
+        gitlet(repo, "add", "f.txt", "d/g.txt");
+        crashEach(repo, messages("initial commit", "base"),
+                  messages("initial commit", "base", "next"),
+                  "commit", "next");
+    }
+
+    /** A merge is crashed. */
+    @Test
+    public void merge() throws IOException {
+        File repo = scratch();
+        gitlet(repo, "init");
+        write(repo, "f.txt", "one\n");
+        gitlet(repo, "add", "f.txt");
+        gitlet(repo, "commit", "base");
+        gitlet(repo, "branch", "other");
+        write(repo, "g.txt", "mine\n");
+        gitlet(repo, "add", "g.txt");
+        gitlet(repo, "commit", "mine");
+        gitlet(repo, "checkout", "other");
+        write(repo, "f.txt", "theirs\n");
+        gitlet(repo, "add", "f.txt");
+        gitlet(repo, "commit", "theirs");
+        gitlet(repo, "checkout", "master");
+        crashEach(repo, messages("initial commit", "base", "mine", "theirs"),
+                  messages("initial commit", "base", "mine", "theirs",
+                           "Merged other into master."), "merge", "other");
+    }
+
+    /** A gc that drops the commits of a deleted branch is crashed. */
+    @Test
+    public void gc() throws IOException {
+        File repo = scratch();
+        gitlet(repo, "init");
+        write(repo, "f.txt", "one\n");
+        gitlet(repo, "add", "f.txt");
+        gitlet(repo, "commit", "base");
+        gitlet(repo, "gc");
+        gitlet(repo, "branch", "other");
+        gitlet(repo, "checkout", "other");
+        for (int i = 0; i < 3; i += 1) {
+            write(repo, "f.txt", "doomed " + i + "\n");
+            gitlet(repo, "add", "f.txt");
+            gitlet(repo, "commit", "doomed " + i);
+        }
+        gitlet(repo, "checkout", "master");
+        gitlet(repo, "rm-branch", "other");
+        write(repo, "g.txt", "kept\n");
+        gitlet(repo, "add", "g.txt");
+        gitlet(repo, "commit", "kept");
+        crashEach(repo, messages("initial commit", "base", "kept", "doomed 0",
+                                 "doomed 1", "doomed 2"),
+                  messages("initial commit", "base", "kept"), "gc");
+    }
+
+    /** Run the command COMMAND on copies of the repository TEMPLATE,
+     *  whose commits have the messages BEFORE, crashing it at each of its
+     *  crash points in turn, until it runs to the end. After each crash,
+     *  check that the repository can be read and written, and that its
+     *  commits then have the messages BEFORE, or AFTER as they are once
+     *  COMMAND is done, along with the commit made afterwards. */
+    private void crashEach(File template, TreeSet<String> before,
+                           TreeSet<String> after, String... command)
+        throws IOException {
+        int crashes;
+        for (crashes = 1;; crashes += 1) {
+            File repo = scratch();
+            copy(template, repo);
+            String point = Arrays.toString(command) + " crashed at point "
+                + crashes;
+            if (run(repo, crashes, command).status == 0) {
+                delete(repo);
+                break;
+            }
+            tear(repo, crashes);
+            Result log = run(repo, 0, "log", "--oneline");
+            assertEquals(point + ": " + log.output, 0, log.status);
+            gitlet(repo, "add", write(repo, "h.txt", "later\n"));
+            gitlet(repo, "commit", "later");
+            TreeSet<String> found = globalLog(repo);
+            assertTrue(point + ": " + found, found.remove("later"));
+            assertTrue(point + ": " + found,
+                       found.equals(before) || found.equals(after));
+            delete(repo);
+        }
+        assertTrue(crashes > 5);
+        delete(template);
+    }
+
+    /** Append a torn record, of a length depending on SEED, to each
+     *  append-only file in REPO whose length is recorded. Only those can
+     *  have been appended to, since Journal.appending records the length
+     *  of a file before its first append. */
+    private static void tear(File repo, int seed) throws IOException {
+        Random rand = new Random(seed);
+        File lengths = new File(repo, ".gitlet/lengths");
+        if (!lengths.isFile()) {
+            return;
+        }
+        for (String line : Files.readAllLines(lengths.toPath())) {
+            File log = new File(repo, ".gitlet/"
+                                + line.substring(line.indexOf(' ') + 1));
+            if (log.isFile()) {
+                byte[] junk = new byte[1 + rand.nextInt(40)];
+                rand.nextBytes(junk);
+                try (RandomAccessFile f = new RandomAccessFile(log, "rw")) {
+                    f.seek(f.length());
+                    f.write(junk);
+                }
+            }
+        }
+    }
+
+    /** Return the messages of the commits global-log lists in REPO. */
+    private static TreeSet<String> globalLog(File repo) throws IOException {
+        TreeSet<String> result = new TreeSet<>();
+        String[] lines = gitlet(repo, "global-log").split("\\R");
+        for (int i = 0; i < lines.length; i += 1) {
+            if (lines[i].startsWith("Date: ") && i + 1 < lines.length) {
+                assertTrue(lines[i + 1], result.add(lines[i + 1]));
+            }
+        }
+        return result;
+    }
+
+    /** Return a set of MESSAGES. */
+    private static TreeSet<String> messages(String... messages) {
+        return new TreeSet<>(Arrays.asList(messages));
+    }
+
+    /** Run ARGS in REPO, which must succeed, and return its output. */
+    private static String gitlet(File repo, String... args)
+        throws IOException {
+        Result result = run(repo, 0, args);
+        assertEquals(Arrays.toString(args) + ": " + result.output,
+                     0, result.status);
+        return result.output;
+    }
+
+    /** Run ARGS in REPO in a new process that crashes at crash point
+     *  CRASH, or never if it is 0, and return how it ended. */
+    private static Result run(File repo, int crash, String... args)
+        throws IOException {
+        ArrayList<String> cmd = new ArrayList<>();
+        cmd.add(Path.of(System.getProperty("java.home"), "bin", "java")
+                .toString());
+        cmd.add("-XX:TieredStopAtLevel=1");
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add("-Dgitlet.crash=" + crash);
+        cmd.add(CrashTest.class.getName());
+        cmd.addAll(Arrays.asList(args));
+        Process p = new ProcessBuilder(cmd).directory(repo)
+            .redirectErrorStream(true).start();
+        String output = new String(p.getInputStream().readAllBytes(),
+                                   StandardCharsets.UTF_8);
+        try {
+            int status = p.waitFor();
+            if (crash > 0 && status != 0) {
+                assertEquals(output, Utils.CRASH_STATUS, status);
+            }
+            return new Result(status, output);
+        } catch (InterruptedException excp) {
+            throw new IOException(excp);
+        }
+    }
+
+    /** Write TEXT to the file NAME in REPO and return NAME. */
+    private static String write(File repo, String name, String text)
+        throws IOException {
+        File file = new File(repo, name);
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), text);
+        return name;
+    }
+
+    /** Return a new empty directory. */
+    private static File scratch() throws IOException {
+        return Files.createTempDirectory("gitlet-crash").toFile();
+    }
+
+    /** Copy the contents of the directory FROM into the directory TO. */
+    private static void copy(File from, File to) throws IOException {
+        Path source = from.toPath();
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path p : (Iterable<Path>) paths::iterator) {
+                Path target = to.toPath().resolve(source.relativize(p));
+                if (Files.isDirectory(p)) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.copy(p, target,
+                               StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    /** Delete the directory DIR and everything in it. */
+    private static void delete(File dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            List<Path> all = new ArrayList<>();
+            paths.sorted(Comparator.reverseOrder()).forEach(all::add);
+            for (Path p : all) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    /** How a process ended. */
+    private static class Result {
+        /** A process that ended with exit status STATUS, having printed
+         *  OUTPUT. */
+        Result(int status, String output) {
+            this.status = status;
+            this.output = output;
+        }
+
+        /** Exit status. */
+        private final int status;
+        /** Standard output and error. */
+        private final String output;
+    }
+}
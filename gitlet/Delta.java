@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Delta encoding of one version of a file against another. A delta is
+ *  the lengths of the base and the target followed by a sequence of
+ *  instructions, each either copying a range of the base or inserting
+ *  literal bytes. Matches are found by indexing the base in blocks of
+ *  BLOCK bytes and extending each block match in both directions.
+ *  @author Ellsa Fiorenza
+ */
+class Delta {
+
+    /** Size of the base blocks that are indexed. */
+    private static final int BLOCK = 16;
+
+    /** Instruction inserting literal bytes. */
+    private static final int INSERT = 0;
+
+    /** Instruction copying a range of the base. */
+    private static final int COPY = 1;
+
+    /** Return a delta that turns BASE into TARGET. */
+    static byte[] compute(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> index = new HashMap<>();
+        for (int o = 0; o + BLOCK <= base.length; o += BLOCK) {
+            index.putIfAbsent(hash(base, o), o);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, base.length);
+        writeInt(out, target.length);
+        int pending = 0, i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer o = index.get(hash(target, i));
+            if (o == null || !matches(base, o, target, i)) {
+                i += 1;
+                continue;
+            }
+            int back = 0;
+            while (o - back > 0 && i - back > pending
+                   && base[o - back - 1] == target[i - back - 1]) {
+                back += 1;
+            }
+            int start = i - back, from = o - back, len = BLOCK + back;
+            while (from + len < base.length && start + len < target.length
+                   && base[from + len] == target[start + len]) {
+                len += 1;
+            }
+            insert(out, target, pending, start);
+            out.write(COPY);
+            writeInt(out, from);
+            writeInt(out, len);
+            i = pending = start + len;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = { 0 };
+        if (readInt(delta, pos) != base.length) {
+            throw Utils.error("delta does not apply to its base");
+        }
+        byte[] result = new byte[readInt(delta, pos)];
+        int n = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int from = readInt(delta, pos), len = readInt(delta, pos);
+                System.arraycopy(base, from, result, n, len);
+                n += len;
+            } else {
+                int len = readInt(delta, pos);
+                System.arraycopy(delta, pos[0], result, n, len);
+                pos[0] += len;
+                n += len;
+            }
+        }
+        if (n != result.length) {
+            throw Utils.error("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Write an instruction inserting TARGET[START .. END-1] to OUT, if
+     *  that range is not empty. */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int start, int end) {
+        if (start < end) {
+            out.write(INSERT);
+            writeInt(out, end - start);
+            out.write(target, start, end - start);
+        }
+    }
+
+    /** Return true iff the BLOCK bytes of A at AO equal those of B at
+     *  BO. */
+    private static boolean matches(byte[] a, int ao, byte[] b, int bo) {
+        for (int k = 0; k < BLOCK; k += 1) {
+            if (a[ao + k] != b[bo + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return a hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int k = start; k < start + BLOCK; k += 1) {
+            h = 31 * h + data[k];
+        }
+        return h;
+    }
+
+    /** Write the non-negative V to OUT in 7-bit groups, low first. */
+    private static void writeInt(ByteArrayOutputStream out, int v) {
+        while (v >= 0x80) {
+            out.write((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    /** Read an integer written by writeInt from DATA at POS[0], advancing
+     *  POS[0] past it. */
+    private static int readInt(byte[] data, int[] pos) {
+        int v = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            v |= (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return v;
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line diffs. Lines are first replaced by small integers, equal lines by
+ *  equal integers, so the diff itself only ever compares ints. The diff
+ *  is Myers' O(ND) algorithm in its linear-space form: the middle snake
+ *  of an optimal edit script is found by searching from both ends at
+ *  once, and the halves on either side of it are diffed recursively, so
+ *  only two vectors of N + M ints are needed however long the inputs.
+ *  As in GNU diff, a search for a middle snake that runs for more than
+ *  TOO_EXPENSIVE steps settles for the furthest point reached, so very
+ *  different inputs are diffed quickly, if not minimally.
+ *  @author Ellsa Fiorenza
+ */
+class Diff {
+
+    /** Least number of steps after which a middle snake search gives
+     *  up. */
+    private static final int TOO_EXPENSIVE = 4096;
+
+    /** Return the lines of TEXT, each with its line terminator, so that
+     *  joining them gives back TEXT. */
+    static String[] lines(String text) {
+        ArrayList<String> result = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            result.add(text.substring(start, end));
+            start = end;
+        }
+        return result.toArray(new String[0]);
+    }
+
+    /** Return the hunks in which the lines A and B differ, in order. */
+    static List<Hunk> diff(String[] a, String[] b) {
+        HashMap<String, Integer> ids = new HashMap<>();
+        return diff(intern(a, ids), intern(b, ids));
+    }
+
+    /** Return the hunks in which the sequences A and B differ, in
+     *  order. */
+    static List<Hunk> diff(int[] a, int[] b) {
+        return new Diff(a, b).hunks();
+    }
+
+    /** Return LINES with each line replaced by its number in IDS, adding
+     *  lines not yet numbered. */
+    private static int[] intern(String[] lines, HashMap<String, Integer> ids) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i += 1) {
+            Integer id = ids.putIfAbsent(lines[i], ids.size());
+            result[i] = id == null ? ids.size() - 1 : id;
+        }
+        return result;
+    }
+
+    /** A diff of A against B. */
+    private Diff(int[] a, int[] b) {
+        _a = a;
+        _b = b;
+        _aChanged = new boolean[a.length + 1];
+        _bChanged = new boolean[b.length + 1];
+        _offset = b.length + 1;
+        _forward = new int[a.length + b.length + 3];
+        _backward = new int[a.length + b.length + 3];
+        compare(0, a.length, 0, b.length);
+    }
+
+    /** Mark the lines of _a[ALO .. AHI-1] and _b[BLO .. BHI-1] that are
+     *  not part of a longest common subsequence of the two. */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aHi > aLo && bHi > bLo && _a[aHi - 1] == _b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi) {
+            for (int j = bLo; j < bHi; j += 1) {
+                _bChanged[j] = true;
+            }
+        } else if (bLo == bHi) {
+            for (int i = aLo; i < aHi; i += 1) {
+                _aChanged[i] = true;
+            }
+        } else {
+            int aMid = middleSnake(aLo, aHi, bLo, bHi);
+            int bMid = aMid - _snakeDiagonal;
+            compare(aLo, aMid, bLo, bMid);
+            compare(aMid, aHi, bMid, bHi);
+        }
+    }
+
+    /** Return the position in _a of a point on the middle snake of an
+     *  optimal edit script between _a[ALO .. AHI-1] and _b[BLO .. BHI-1],
+     *  both nonempty, and leave its diagonal (position in _a minus
+     *  position in _b) in _snakeDiagonal. */
+    private int middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int[] fd = _forward, bd = _backward;
+        int off = _offset;
+        int dMin = aLo - bHi, dMax = aHi - bLo;
+        int fMid = aLo - bLo, bMid = aHi - bHi;
+        int fMin = fMid, fMax = fMid, bMin = bMid, bMax = bMid;
+        boolean odd = ((fMid - bMid) & 1) != 0;
+        fd[off + fMid] = aLo;
+        bd[off + bMid] = aHi;
+        for (int steps = 1;; steps += 1) {
+            if (fMin > dMin) {
+                fMin -= 1;
+                fd[off + fMin - 1] = -1;
+            } else {
+                fMin += 1;
+            }
+            if (fMax < dMax) {
+                fMax += 1;
+                fd[off + fMax + 1] = -1;
+            } else {
+                fMax -= 1;
+            }
+            for (int d = fMax; d >= fMin; d -= 2) {
+                int lo = fd[off + d - 1], hi = fd[off + d + 1];
+                int x = lo >= hi ? lo + 1 : hi;
+                int y = x - d;
+                while (x < aHi && y < bHi && _a[x] == _b[y]) {
+                    x += 1;
+                    y += 1;
+                }
+                fd[off + d] = x;
+                if (odd && bMin <= d && d <= bMax && bd[off + d] <= x) {
+                    _snakeDiagonal = d;
+                    return x;
+                }
+            }
+            if (bMin > dMin) {
+                bMin -= 1;
+                bd[off + bMin - 1] = Integer.MAX_VALUE;
+            } else {
+                bMin += 1;
+            }
+            if (bMax < dMax) {
+                bMax += 1;
+                bd[off + bMax + 1] = Integer.MAX_VALUE;
+            } else {
+                bMax -= 1;
+            }
+            for (int d = bMax; d >= bMin; d -= 2) {
+                int lo = bd[off + d - 1], hi = bd[off + d + 1];
+                int x = lo < hi ? lo : hi - 1;
+                int y = x - d;
+                while (x > aLo && y > bLo && _a[x - 1] == _b[y - 1]) {
+                    x -= 1;
+                    y -= 1;
+                }
+                bd[off + d] = x;
+                if (!odd && fMin <= d && d <= fMax && x <= fd[off + d]) {
+                    _snakeDiagonal = d;
+                    return x;
+                }
+            }
+            if (steps >= TOO_EXPENSIVE) {
+                return furthest(aLo, aHi, bLo, bHi, fMin, fMax, bMin, bMax);
+            }
+        }
+    }
+
+    /** Return the position in _a of whichever point reached by the
+     *  forward search, on diagonals FMIN .. FMAX, or the backward search,
+     *  on diagonals BMIN .. BMAX, has come furthest through _a[ALO ..
+     *  AHI-1] and _b[BLO .. BHI-1], and leave its diagonal in
+     *  _snakeDiagonal. */
+    private int furthest(int aLo, int aHi, int bLo, int bHi,
+                         int fMin, int fMax, int bMin, int bMax) {
+        int fBest = -1, fX = 0;
+        for (int d = fMax; d >= fMin; d -= 2) {
+            int x = Math.min(_forward[_offset + d], aHi);
+            int y = x - d;
+            if (y > bHi) {
+                x = bHi + d;
+                y = bHi;
+            }
+            if (x + y > fBest) {
+                fBest = x + y;
+                fX = x;
+            }
+        }
+        int bBest = Integer.MAX_VALUE, bX = 0;
+        for (int d = bMax; d >= bMin; d -= 2) {
+            int x = Math.max(aLo, _backward[_offset + d]);
+            int y = x - d;
+            if (y < bLo) {
+                x = bLo + d;
+                y = bLo;
+            }
+            if (x + y < bBest) {
+                bBest = x + y;
+                bX = x;
+            }
+        }
+        if ((aHi + bHi) - bBest < fBest - (aLo + bLo)) {
+            _snakeDiagonal = fX - (fBest - fX);
+            return fX;
+        }
+        _snakeDiagonal = bX - (bBest - bX);
+        return bX;
+    }
+
+    /** Return the runs of changed lines as hunks. */
+    private List<Hunk> hunks() {
+        ArrayList<Hunk> result = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < _a.length || j < _b.length) {
+            if (!_aChanged[i] && !_bChanged[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int aStart = i, bStart = j;
+            while (_aChanged[i]) {
+                i += 1;
+            }
+            while (_bChanged[j]) {
+                j += 1;
+            }
+            result.add(new Hunk(aStart, i, bStart, j));
+        }
+        return result;
+    }
+
+    /** A region in which two sequences differ: lines [aStart, aEnd) of
+     *  the first are replaced by lines [bStart, bEnd) of the second.
+     *  Either range may be empty. */
+    static class Hunk {
+        /** A hunk replacing lines [ASTART, AEND) of the first sequence by
+         *  lines [BSTART, BEND) of the second. */
+        Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+            _aStart = aStart;
+            _aEnd = aEnd;
+            _bStart = bStart;
+            _bEnd = bEnd;
+        }
+
+        /** Return the first replaced line of the first sequence. */
+        int aStart() {
+            return _aStart;
+        }
+
+        /** Return the line after the last replaced one of the first
+         *  sequence. */
+        int aEnd() {
+            return _aEnd;
+        }
+
+        /** Return the first replacing line of the second sequence. */
+        int bStart() {
+            return _bStart;
+        }
+
+        /** Return the line after the last replacing one of the second
+         *  sequence. */
+        int bEnd() {
+            return _bEnd;
+        }
+
+        /** Bounds of the hunk. */
+        private final int _aStart, _aEnd, _bStart, _bEnd;
+    }
+
+    /** The sequences compared. */
+    private final int[] _a, _b;
+
+    /** Whether each element of _a and _b is outside the common
+     *  subsequence. Each has an extra false entry at the end. */
+    private final boolean[] _aChanged, _bChanged;
+
+    /** Furthest reaching positions in _a of the forward and backward
+     *  searches, by diagonal plus _offset. */
+    private final int[] _forward, _backward;
+
+    /** Index in _forward and _backward of diagonal 0. */
+    private final int _offset;
+
+    /** Diagonal of the snake last found by middleSnake. */
+    private int _snakeDiagonal;
+}
@@ -0,0 +1,219 @@
+package gitlet;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Diff, Merge3 and UnifiedDiff.
+ *  @author Ellsa Fiorenza
+ */
+public class DiffTest {
+
+    /** Return the lines of the strings in WORDS, each followed by a
+     *  newline. */
+    static String[] lines(String... words) {
+        String[] result = new String[words.length];
+        for (int i = 0; i < words.length; i += 1) {
+            result[i] = words[i] + "\n";
+        }
+        return result;
+    }
+
+    /** Return the text whose lines are WORDS. */
+    static String text(String... words) {
+        return String.join("", lines(words));
+    }
+
+    /** Return the result of replacing the lines of A named by HUNKS with
+     *  the lines of B they name, checking that the hunks are in order,
+     *  separated, and not empty. */
+    static int[] apply(int[] a, int[] b, List<Diff.Hunk> hunks) {
+        int[] result = new int[b.length];
+        int i = 0, n = 0;
+        for (Diff.Hunk h : hunks) {
+            assertTrue(h.aStart() >= i);
+            assertTrue(h.aStart() < h.aEnd() || h.bStart() < h.bEnd());
+            assertEquals(h.aStart() - i, h.bStart() - n);
+            for (; i < h.aStart(); i += 1, n += 1) {
+                result[n] = a[i];
+            }
+            for (int j = h.bStart(); j < h.bEnd(); j += 1, n += 1) {
+                result[n] = b[j];
+            }
+            i = h.aEnd();
+        }
+        for (; i < a.length; i += 1, n += 1) {
+            result[n] = a[i];
+        }
+        assertEquals(b.length, n);
+        return result;
+    }
+
+    /** Return the number of elements deleted or inserted by HUNKS. */
+    static int edits(List<Diff.Hunk> hunks) {
+        int result = 0;
+        for (Diff.Hunk h : hunks) {
+            result += h.aEnd() - h.aStart() + h.bEnd() - h.bStart();
+        }
+        return result;
+    }
+
+    /** Return the least number of deletions and insertions turning A into
+     *  B, by dynamic programming. */
+    static int distance(int[] a, int[] b) {
+        int[][] lcs = new int[a.length + 1][b.length + 1];
+        for (int i = a.length - 1; i >= 0; i -= 1) {
+            for (int j = b.length - 1; j >= 0; j -= 1) {
+                lcs[i][j] = a[i] == b[j] ? lcs[i + 1][j + 1] + 1
+                    : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+            }
+        }
+        return a.length + b.length - 2 * lcs[0][0];
+    }
+
+    @Test
+    public void splitLines() {
+        assertArrayEquals(new String[] { "a\n", "b\n", "c" },
+                          Diff.lines("a\nb\nc"));
+        assertArrayEquals(new String[] { "a\n", "\n" },
+                          Diff.lines("a\n\n"));
+        assertEquals(0, Diff.lines("").length);
+    }
+
+    @Test
+    public void simpleHunks() {
+        assertTrue(Diff.diff(lines("a", "b"), lines("a", "b")).isEmpty());
+        List<Diff.Hunk> h = Diff.diff(lines("a", "b", "c"),
+                                      lines("a", "x", "c", "d"));
+        assertEquals(2, h.size());
+        assertEquals(Arrays.asList(1, 2, 1, 2), bounds(h.get(0)));
+        assertEquals(Arrays.asList(3, 3, 3, 4), bounds(h.get(1)));
+        h = Diff.diff(new String[0], lines("a", "b"));
+        assertEquals(1, h.size());
+        assertEquals(Arrays.asList(0, 0, 0, 2), bounds(h.get(0)));
+        h = Diff.diff(lines("a", "b", "c"), lines("c"));
+        assertEquals(1, h.size());
+        assertEquals(Arrays.asList(0, 2, 0, 0), bounds(h.get(0)));
+    }
+
+    /** Return the bounds of H as a list. */
+    static List<Integer> bounds(Diff.Hunk h) {
+        return Arrays.asList(h.aStart(), h.aEnd(), h.bStart(), h.bEnd());
+    }
+
+    /** On random inputs, the hunks turn the first sequence into the
+     *  second with the least number of edits. */
+    @Test
+    public void minimal() {
+        Random rand = new Random(14);
+        for (int t = 0; t < 300; t += 1) {
+            int[] a = random(rand, rand.nextInt(60), 1 + rand.nextInt(8));
+            int[] b = mutate(rand, a);
+            List<Diff.Hunk> hunks = Diff.diff(a, b);
+            assertTrue(Arrays.equals(b, apply(a, b, hunks)));
+            assertEquals(distance(a, b), edits(hunks));
+        }
+    }
+
+    /** Very different long inputs are still diffed correctly. */
+    @Test
+    public void expensive() {
+        Random rand = new Random(15);
+        int[] a = random(rand, 20000, 4), b = random(rand, 20000, 4);
+        assertTrue(Arrays.equals(b, apply(a, b, Diff.diff(a, b))));
+    }
+
+    /** Return N random elements below RANGE, drawn from RAND. */
+    static int[] random(Random rand, int n, int range) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = rand.nextInt(range);
+        }
+        return result;
+    }
+
+    /** Return A with a few random deletions, insertions and changes,
+     *  drawn from RAND. */
+    static int[] mutate(Random rand, int[] a) {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int x : a) {
+            int r = rand.nextInt(10);
+            if (r == 0) {
+                continue;
+            } else if (r == 1) {
+                result.add(rand.nextInt(8));
+            }
+            result.add(r == 2 ? rand.nextInt(8) : x);
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    public void cleanMerges() {
+        String split = text("a", "b", "c", "d", "e");
+        Merge3 m = new Merge3(split, text("a", "B", "c", "d", "e"),
+                              text("a", "b", "c", "D", "e", "f"));
+        assertFalse(m.hasConflicts());
+        assertEquals(text("a", "B", "c", "D", "e", "f"), m.result());
+        m = new Merge3(split, split, text("a", "e"));
+        assertFalse(m.hasConflicts());
+        assertEquals(text("a", "e"), m.result());
+        m = new Merge3(split, text("x", "a", "b", "c", "d", "e"), split);
+        assertEquals(text("x", "a", "b", "c", "d", "e"), m.result());
+        m = new Merge3(split, text("a", "X", "c", "d", "e"),
+                       text("a", "X", "c", "d", "e"));
+        assertFalse(m.hasConflicts());
+        assertEquals(text("a", "X", "c", "d", "e"), m.result());
+    }
+
+    /** A conflict hunk holds only the lines both sides changed. */
+    @Test
+    public void conflictHunks() {
+        String split = text("a", "b", "c", "d", "e");
+        Merge3 m = new Merge3(split, text("a", "B1", "c", "d", "E"),
+                              text("a", "B2", "c", "d", "e"));
+        assertTrue(m.hasConflicts());
+        assertEquals("a\n" + Merge3.CURRENT_MARKER + "B1\n"
+                     + Merge3.SEPARATOR_MARKER + "B2\n"
+                     + Merge3.GIVEN_MARKER + "c\nd\nE\n", m.result());
+        m = new Merge3(split, text("a", "b", "e"),
+                       text("a", "b", "C", "d", "e"));
+        assertTrue(m.hasConflicts());
+        assertEquals("a\nb\n" + Merge3.CURRENT_MARKER
+                     + Merge3.SEPARATOR_MARKER + "C\nd\n"
+                     + Merge3.GIVEN_MARKER + "e\n", m.result());
+        m = new Merge3("", "x", "y");
+        assertEquals(Merge3.CURRENT_MARKER + "x\n" + Merge3.SEPARATOR_MARKER
+                     + "y\n" + Merge3.GIVEN_MARKER, m.result());
+    }
+
+    @Test
+    public void unified() {
+        StringWriter text = new StringWriter();
+        try (PrintWriter out = new PrintWriter(text)) {
+            UnifiedDiff.write(out, "f",
+                              bytes(text("1", "2", "3", "4", "5", "6", "7",
+                                         "8", "9")),
+                              bytes(text("1", "2", "3", "4", "five", "6",
+                                         "7", "8", "9")));
+        }
+        String nl = System.lineSeparator();
+        assertEquals(String.join(nl, "diff --gitlet a/f b/f", "--- a/f",
+                                 "+++ b/f", "@@ -2,7 +2,7 @@", " 2", " 3",
+                                 " 4", "-5", "+five", " 6", " 7", " 8", ""),
+                     text.toString());
+    }
+
+    /** Return the UTF-8 bytes of S. */
+    static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,126 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/** The first-parent history of a commit, newest first, read lazily: each
+ *  commit is only looked at when the one after it has been consumed, so
+ *  printing the first few entries of a long history costs no more than
+ *  printing the first few entries of a short one. The history may be
+ *  limited to commits made since some time, which ends the walk at the
+ *  first older commit, and to commits that changed some path.
+ *  @author Ellsa Fiorenza
+ */
+class History implements Iterator<String> {
+
+    /** The history starting at the commit whose UID is START. */
+    History(String start) {
+        _next = start;
+        _since = Long.MIN_VALUE;
+    }
+
+    /** Limit this history to commits added to the repository at or after
+     *  TIME, in milliseconds since the epoch. Return this history. */
+    History since(long time) {
+        _since = time;
+        return this;
+    }
+
+    /** Limit this history to commits whose version of the file or
+     *  directory PATH differs from their first parent's. Return this
+     *  history. */
+    History touching(String path) {
+        _path = path;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        CommitGraph graph = CommitGraph.get();
+        while (_next != null && !_found) {
+            if (graph.time(_next) < _since) {
+                _next = null;
+            } else if (_path == null || changed(_next)) {
+                _found = true;
+            } else {
+                _next = graph.parent(_next);
+            }
+        }
+        return _next != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String result = _next;
+        _next = CommitGraph.get().parent(_next);
+        _found = false;
+        return result;
+    }
+
+    /** Return true iff the commit whose UID is ID has a different version
+     *  of _path than its first parent. Most commits that did not change it
+     *  are ruled out by the commit graph's changed-paths filter without
+     *  reading any trees. */
+    private boolean changed(String id) {
+        if (!CommitGraph.get().mayChange(id, _path)) {
+            return false;
+        }
+        String parent = CommitGraph.get().parent(id);
+        String a = tree(id), b = parent == null ? null : tree(parent);
+        return !Objects.equals(lookup(a, b), lookup(b, a));
+    }
+
+    /** Return the UID of the root tree of the commit whose UID is ID, or
+     *  null if it has no files. */
+    private static String tree(String id) {
+        Commit commit = ObjectStore.readCommit(id);
+        if (commit == null) {
+            throw Utils.error("missing commit %s", id);
+        }
+        return commit.getTree();
+    }
+
+    /** Return the UID of _path in the tree ROOT, or of the first tree
+     *  along the way that is identical in the tree OTHER, since nothing
+     *  under such a tree can differ. Return null if ROOT has no _path. */
+    private String lookup(String root, String other) {
+        String id = root, otherID = other;
+        int start = 0;
+        while (id != null) {
+            if (id.equals(otherID)) {
+                return id;
+            }
+            int k = _path.indexOf(Tree.SEPARATOR, start);
+            String name = k < 0 ? _path.substring(start)
+                : _path.substring(start, k);
+            Tree.Entry e = Tree.read(id).entries().get(name);
+            Tree.Entry o = otherID == null ? null
+                : Tree.read(otherID).entries().get(name);
+            if (e == null || k < 0) {
+                return e == null ? null : e.id();
+            } else if (!e.isTree()) {
+                return null;
+            }
+            id = e.id();
+            otherID = o == null || !o.isTree() ? null : o.id();
+            start = k + 1;
+        }
+        return null;
+    }
+
+    /** The next commit to consider, or null at the end. */
+    private String _next;
+
+    /** True iff _next is known to be in this history. */
+    private boolean _found;
+
+    /** Earliest time of the commits in this history. */
+    private long _since;
+
+    /** Path the commits in this history must change, or null. */
+    private String _path;
+}
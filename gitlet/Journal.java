@@ -0,0 +1,328 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Makes the effects of a command durable, and all-or-nothing. Objects
+ *  are immutable and written under new names, so they need no journal,
+ *  only to reach the disk before anything refers to them; rather than
+ *  syncing each as it is written, their files are noted here and synced
+ *  together, once per command, by sync. The mutable files (the branches,
+ *  HEAD and the staging area) are then replaced by commit: when a command
+ *  changes more than one of them, their new contents are first written,
+ *  with a checksum, to .gitlet/journal and synced, then each file is
+ *  replaced atomically, and only then is the journal deleted. A journal
+ *  left by a crash is finished by recover, or discarded if it was never
+ *  completely written, so that a command takes effect entirely or not
+ *  at all. Files that commands only append to, such as the commit graph,
+ *  are covered by recording their lengths in .gitlet/lengths along with
+ *  the command's other updates: readers read no further than the
+ *  recorded lengths, and recover cuts off whatever a crashed command
+ *  appended past them, torn records included, before anything else is
+ *  appended. Files too large to copy into the journal, such as those gc
+ *  rewrites, are written whole under temporary names and noted by
+ *  renaming; the journal then records only the renames, which commit
+ *  and recover carry out with the other updates.
+ *  @author Ellsa Fiorenza
+ */
+class Journal {
+
+    /** The journal file. */
+    static final File FILE = Utils.join(ObjectStore.GITLET, "journal");
+
+    /** The file recording the committed length of each append-only
+     *  file: one "length name" line per file. */
+    static final File LENGTHS = Utils.join(ObjectStore.GITLET, "lengths");
+
+    /** Note that FILE has been newly written and must be synced before
+     *  the next commit. */
+    static void written(File file) {
+        synchronized (PENDING) {
+            PENDING.add(file);
+        }
+    }
+
+    /** Note that the complete new contents of TO have been written to
+     *  FROM, in .gitlet, and that FROM is to be renamed to TO by the next
+     *  commit. If TO is an append-only file whose length is recorded,
+     *  the length of FROM is recorded in its place. */
+    static void renaming(File from, File to) {
+        synchronized (PENDING) {
+            PENDING.add(from);
+            RENAMES.put(from, to);
+        }
+    }
+
+    /** Note that LOG, a file that is only ever appended to, is about to
+     *  be appended to. What is appended counts only once commit records
+     *  the new length of LOG. A file appended to for the first time was
+     *  created whole, so its present length is recorded at once. */
+    static void appending(File log) {
+        Utils.crashPoint();
+        Map<String, Long> lengths = lengths();
+        if (!lengths.containsKey(log.getName())) {
+            lengths.put(log.getName(), log.length());
+            Utils.writeAtomically(LENGTHS, encodeLengths(lengths));
+            Utils.sync(ObjectStore.GITLET);
+        }
+        synchronized (PENDING) {
+            APPENDED.add(log);
+            PENDING.add(log);
+        }
+    }
+
+    /** Return the length of the part of the append-only file LOG that
+     *  holds what committed commands appended, and what this process
+     *  has, which is where readers of LOG must stop. */
+    static long length(File log) {
+        synchronized (PENDING) {
+            if (APPENDED.contains(log)) {
+                return log.length();
+            }
+        }
+        return committedLength(log);
+    }
+
+    /** Return the length of the part of the append-only file LOG that
+     *  holds what committed commands appended. */
+    static long committedLength(File log) {
+        long size = log.length();
+        Long recorded = lengths().get(log.getName());
+        return recorded == null ? size : Math.min(size, recorded);
+    }
+
+    /** Sync every file noted by written since the last sync, and the
+     *  directories holding them, so they survive a crash. */
+    static void sync() {
+        File[] files;
+        synchronized (PENDING) {
+            files = PENDING.toArray(new File[0]);
+            PENDING.clear();
+        }
+        HashSet<File> dirs = new HashSet<>();
+        Arrays.stream(files).parallel().forEach(Utils::sync);
+        for (File f : files) {
+            dirs.add(f.getAbsoluteFile().getParentFile());
+        }
+        dirs.forEach(Utils::sync);
+    }
+
+    /** Make everything noted by written durable, then replace each file
+     *  in UPDATES by its new contents, and carry out the renames noted by
+     *  renaming, all of them or none. */
+    static void commit(Map<File, byte[]> updates) {
+        sync();
+        File[] appended;
+        Map<File, File> renames;
+        synchronized (PENDING) {
+            appended = APPENDED.toArray(new File[0]);
+            APPENDED.clear();
+            renames = new LinkedHashMap<>(RENAMES);
+            RENAMES.clear();
+        }
+        Map<String, Long> lengths = lengths();
+        boolean resized = appended.length > 0;
+        for (File log : appended) {
+            lengths.put(log.getName(), log.length());
+        }
+        for (Map.Entry<File, File> e : renames.entrySet()) {
+            if (lengths.containsKey(e.getValue().getName())) {
+                lengths.put(e.getValue().getName(), e.getKey().length());
+                resized = true;
+            }
+        }
+        if (resized) {
+            updates = new LinkedHashMap<>(updates);
+            updates.put(LENGTHS, encodeLengths(lengths));
+        }
+        Utils.crashPoint();
+        if (updates.isEmpty() && renames.isEmpty()) {
+            return;
+        } else if (updates.size() == 1 && renames.isEmpty()) {
+            Map.Entry<File, byte[]> e = updates.entrySet().iterator().next();
+            Utils.writeAtomically(e.getKey(), e.getValue());
+            Utils.sync(ObjectStore.GITLET);
+            return;
+        }
+        Utils.writeAtomically(FILE, encode(updates, renames));
+        Utils.sync(ObjectStore.GITLET);
+        apply(updates, renames);
+    }
+
+    /** Finish the command whose journal was left behind by a crash, if it
+     *  was completely written, and otherwise discard it. Then cut each
+     *  append-only file back to its recorded length. */
+    static void recover() {
+        if (FILE.isFile()) {
+            Map<File, File> renames = new LinkedHashMap<>();
+            Map<File, byte[]> updates =
+                decode(Utils.readContents(FILE), renames);
+            if (updates == null) {
+                FILE.delete();
+                Utils.sync(ObjectStore.GITLET);
+            } else {
+                apply(updates, renames);
+            }
+        }
+        _lengths = null;
+        for (Map.Entry<String, Long> e : lengths().entrySet()) {
+            File log = Utils.join(ObjectStore.GITLET, e.getKey());
+            if (log.length() > e.getValue()) {
+                Utils.crashPoint();
+                try (FileChannel ch = FileChannel.open(
+                         log.toPath(), StandardOpenOption.WRITE)) {
+                    ch.truncate(e.getValue());
+                    ch.force(true);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Carry out RENAMES, from each key to its value, and replace each
+     *  file in UPDATES by its new contents, durably, and delete the
+     *  journal. A rename whose source is gone was already carried out
+     *  before a crash. */
+    private static void apply(Map<File, byte[]> updates,
+                              Map<File, File> renames) {
+        for (Map.Entry<File, File> e : renames.entrySet()) {
+            if (e.getKey().exists()) {
+                Utils.rename(e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<File, byte[]> e : updates.entrySet()) {
+            Utils.writeAtomically(e.getKey(), e.getValue());
+        }
+        Utils.sync(ObjectStore.GITLET);
+        Utils.crashPoint();
+        FILE.delete();
+        Utils.sync(ObjectStore.GITLET);
+        _lengths = null;
+    }
+
+    /** Return the journal recording UPDATES and RENAMES: the number of
+     *  files updated, then the name (within .gitlet), length and contents
+     *  of each, then the number of renames, then the names of the source
+     *  and target of each, then the UID of everything before it. */
+    private static byte[] encode(Map<File, byte[]> updates,
+                                 Map<File, File> renames) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(updates.size());
+            for (Map.Entry<File, byte[]> e : updates.entrySet()) {
+                out.writeUTF(e.getKey().getName());
+                out.writeInt(e.getValue().length);
+                out.write(e.getValue());
+            }
+            out.writeInt(renames.size());
+            for (Map.Entry<File, File> e : renames.entrySet()) {
+                out.writeUTF(e.getKey().getName());
+                out.writeUTF(e.getValue().getName());
+            }
+            out.close();
+            byte[] body = bytes.toByteArray();
+            bytes.write(Utils.sha1(body).getBytes(StandardCharsets.UTF_8));
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the updates recorded in the journal DATA, adding its
+     *  renames to RENAMES, or null if DATA is not a completely written
+     *  journal. Journals written before renames were recorded end after
+     *  the updates. */
+    private static Map<File, byte[]> decode(byte[] data,
+                                            Map<File, File> renames) {
+        if (data.length < Utils.UID_LENGTH) {
+            return null;
+        }
+        byte[] body = Arrays.copyOf(data, data.length - Utils.UID_LENGTH);
+        String sum = new String(data, body.length, Utils.UID_LENGTH,
+                                StandardCharsets.UTF_8);
+        if (!sum.equals(Utils.sha1(body))) {
+            return null;
+        }
+        LinkedHashMap<File, byte[]> result = new LinkedHashMap<>();
+        try (DataInputStream in =
+                 new DataInputStream(new ByteArrayInputStream(body))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                File file = Utils.join(ObjectStore.GITLET, in.readUTF());
+                byte[] contents = new byte[in.readInt()];
+                in.readFully(contents);
+                result.put(file, contents);
+            }
+            for (int n = in.available() > 0 ? in.readInt() : 0; n > 0;
+                 n -= 1) {
+                renames.put(Utils.join(ObjectStore.GITLET, in.readUTF()),
+                            Utils.join(ObjectStore.GITLET, in.readUTF()));
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+        return result;
+    }
+
+    /** Return the recorded lengths of the append-only files, by name,
+     *  reading them on first use. The map may be changed. */
+    private static Map<String, Long> lengths() {
+        if (_lengths == null) {
+            _lengths = new TreeMap<>();
+            String text = LENGTHS.isFile()
+                ? Utils.readContentsAsString(LENGTHS) : "";
+            for (String line : text.split("\n")) {
+                int k = line.indexOf(' ');
+                if (k > 0) {
+                    _lengths.put(line.substring(k + 1),
+                                 Long.parseLong(line.substring(0, k)));
+                }
+            }
+        }
+        return _lengths;
+    }
+
+    /** Return the contents of the lengths file recording LENGTHS. */
+    private static byte[] encodeLengths(Map<String, Long> lengths) {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, Long> e : lengths.entrySet()) {
+            result.append(e.getValue()).append(' ').append(e.getKey())
+                .append('\n');
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Identifies a journal file. */
+    private static final int MAGIC = 0x474a4e4c;
+
+    /** Newly written files not yet synced. */
+    private static final Set<File> PENDING = new HashSet<>();
+
+    /** Renames noted by renaming since the last commit, from each key to
+     *  its value. */
+    private static final Map<File, File> RENAMES = new LinkedHashMap<>();
+
+    /** Append-only files appended to since the last commit. */
+    private static final Set<File> APPENDED = new HashSet<>();
+
+    /** Recorded lengths of the append-only files, once read. */
+    private static Map<String, Long> _lengths;
+}
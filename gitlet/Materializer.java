@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Brings working files to the state of a commit. Files are queued for
+ *  deletion or for writing from the ObjectStore, and then run does all
+ *  the work: deletions first, one by one in reverse path order so that
+ *  directories they empty can be removed after their contents, then the
+ *  writes, which are independent of each other, spread over a bounded
+ *  pool of worker threads. Setting the system property gitlet.report
+ *  makes run print its throughput.
+ *  @author Ellsa Fiorenza
+ */
+class Materializer {
+
+    /** Largest number of files written at once. Writing is mostly
+     *  waiting for the disk, so this exceeds the number of processors. */
+    static final int WORKERS =
+        Math.min(16, 2 * Runtime.getRuntime().availableProcessors());
+
+    /** Queue the working file PATH for deletion. */
+    void delete(String path) {
+        _deletes.add(path);
+    }
+
+    /** Queue the working file PATH to be given the contents of the blob
+     *  whose UID is ID. */
+    void write(String path, String id) {
+        _writes.put(path, id);
+    }
+
+    /** Perform all queued deletions and writes, and record the results in
+     *  the StatCache. A file that already has the contents it is to be
+     *  given is not written. */
+    void run() {
+        long start = System.nanoTime();
+        StatCache cache = StatCache.get();
+        File root = new File(System.getProperty("user.dir"));
+        for (String path : _deletes.descendingSet()) {
+            File file = new File(path);
+            file.delete();
+            cache.forget(path);
+            File dir = file.getAbsoluteFile().getParentFile();
+            while (dir != null && !dir.equals(root) && dir.delete()) {
+                dir = dir.getParentFile();
+            }
+        }
+        TreeSet<File> dirs = new TreeSet<>();
+        for (String path : _writes.keySet()) {
+            File dir = new File(path).getAbsoluteFile().getParentFile();
+            if (dir != null) {
+                dirs.add(dir);
+            }
+        }
+        for (File dir : dirs) {
+            dir.mkdirs();
+        }
+
+        AtomicLong files = new AtomicLong(), bytes = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(WORKERS, _writes.size())));
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (Map.Entry<String, String> e : _writes.entrySet()) {
+                done.add(pool.submit(() -> {
+                    String path = e.getKey(), id = e.getValue();
+                    File file = new File(path);
+                    if (file.isFile() && id.equals(cache.hash(path))) {
+                        return;
+                    }
+                    ObjectStore.restore(id, file);
+                    cache.record(path, id);
+                    files.incrementAndGet();
+                    bytes.addAndGet(file.length());
+                }));
+            }
+            for (Future<?> f : done) {
+                f.get();
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getCause());
+        } catch (InterruptedException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (Boolean.getBoolean("gitlet.report")) {
+            double secs = (System.nanoTime() - start) / 1e9;
+            System.err.printf("deleted %d, wrote %d of %d files, %.1f MB "
+                              + "in %.3f s (%.1f MB/s)%n",
+                              _deletes.size(), files.get(), _writes.size(),
+                              bytes.get() / 1e6, secs,
+                              bytes.get() / 1e6 / Math.max(secs, 1e-9));
+        }
+    }
+
+    /** Paths to delete. */
+    private final TreeSet<String> _deletes = new TreeSet<>();
+
+    /** UIDs of the contents to write, by path. */
+    private final TreeMap<String, String> _writes = new TreeMap<>();
+}
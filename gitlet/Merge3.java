@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** A line-level three-way merge, in the manner of diff3. The current and
+ *  given versions of a file are each diffed against the version at the
+ *  split point. Hunks from either side that touch the same lines of the
+ *  split version are grouped together; a group changed by only one side,
+ *  or changed identically by both, is resolved automatically, and any
+ *  other group becomes a conflict hunk holding just the lines in dispute.
+ *  @author Ellsa Fiorenza
+ */
+class Merge3 {
+
+    /** Start of a conflict hunk, before the current lines. */
+    static final String CURRENT_MARKER = "<<<<<<< HEAD\n";
+
+    /** Separator between the current and given lines of a conflict. */
+    static final String SEPARATOR_MARKER = "=======\n";
+
+    /** End of a conflict hunk, after the given lines. */
+    static final String GIVEN_MARKER = ">>>>>>>\n";
+
+    /** Merge CURRENT and GIVEN, which are both derived from SPLIT. */
+    Merge3(String split, String current, String given) {
+        _split = Diff.lines(split);
+        _current = Diff.lines(current);
+        _given = Diff.lines(given);
+        merge(Diff.diff(_split, _current), Diff.diff(_split, _given));
+    }
+
+    /** Return the merged text, with conflict hunks where needed. */
+    String result() {
+        return _result.toString();
+    }
+
+    /** Return true iff the result contains a conflict hunk. */
+    boolean hasConflicts() {
+        return _conflicts;
+    }
+
+    /** Build the result from the hunks CURRENT and GIVEN that turn the
+     *  split version into the current and given ones. */
+    private void merge(List<Diff.Hunk> current, List<Diff.Hunk> given) {
+        int i = 0, j = 0, pos = 0;
+        while (i < current.size() || j < given.size()) {
+            int start, end;
+            if (j == given.size() || (i < current.size()
+                && current.get(i).aStart() <= given.get(j).aStart())) {
+                start = current.get(i).aStart();
+                end = current.get(i).aEnd();
+            } else {
+                start = given.get(j).aStart();
+                end = given.get(j).aEnd();
+            }
+            int ci = i, gj = j;
+            while (true) {
+                if (i < current.size() && current.get(i).aStart() <= end) {
+                    end = Math.max(end, current.get(i).aEnd());
+                    i += 1;
+                } else if (j < given.size()
+                           && given.get(j).aStart() <= end) {
+                    end = Math.max(end, given.get(j).aEnd());
+                    j += 1;
+                } else {
+                    break;
+                }
+            }
+            append(_split, pos, start);
+            String[] ours = side(_current, current.subList(ci, i), start, end);
+            String[] theirs = side(_given, given.subList(gj, j), start, end);
+            if (ci == i || Arrays.equals(ours, theirs)) {
+                append(theirs, 0, theirs.length);
+            } else if (gj == j) {
+                append(ours, 0, ours.length);
+            } else {
+                _conflicts = true;
+                _result.append(CURRENT_MARKER);
+                appendLines(ours);
+                _result.append(SEPARATOR_MARKER);
+                appendLines(theirs);
+                _result.append(GIVEN_MARKER);
+            }
+            pos = end;
+        }
+        append(_split, pos, _split.length);
+    }
+
+    /** Return the lines of VERSION that replace lines [START, END) of the
+     *  split version, given that HUNKS are the hunks of VERSION against
+     *  the split version that lie within that range. */
+    private String[] side(String[] version, List<Diff.Hunk> hunks,
+                          int start, int end) {
+        if (hunks.isEmpty()) {
+            return Arrays.copyOfRange(_split, start, end);
+        }
+        Diff.Hunk first = hunks.get(0), last = hunks.get(hunks.size() - 1);
+        return Arrays.copyOfRange(version,
+                                  first.bStart() - (first.aStart() - start),
+                                  last.bEnd() + (end - last.aEnd()));
+    }
+
+    /** Append LINES[FROM .. TO-1] to the result. */
+    private void append(String[] lines, int from, int to) {
+        for (int k = from; k < to; k += 1) {
+            _result.append(lines[k]);
+        }
+    }
+
+    /** Append LINES to the result as one side of a conflict hunk,
+     *  terminating the last line if it is not. */
+    private void appendLines(String[] lines) {
+        append(lines, 0, lines.length);
+        if (lines.length > 0 && !lines[lines.length - 1].endsWith("\n")) {
+            _result.append('\n');
+        }
+    }
+
+    /** Lines of the three versions. */
+    private final String[] _split, _current, _given;
+
+    /** The merged text. */
+    private final StringBuilder _result = new StringBuilder();
+
+    /** True iff a conflict hunk was emitted. */
+    private boolean _conflicts;
+}
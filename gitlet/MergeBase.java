@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** Finds the best common ancestors (merge bases) of two commits in a
+ *  CommitGraph. Both commits' histories are walked together, through all
+ *  parents, in decreasing order of generation number: each visited commit
+ *  is painted with the side(s) it is reachable from, and a commit painted
+ *  from both sides is a candidate whose own ancestors are marked stale.
+ *  The walk stops as soon as only stale commits remain, so it never looks
+ *  below the merge bases. A parent's generation is always below its
+ *  child's, so no commit is repainted after it leaves the queue.
+ *  @author Ellsa Fiorenza
+ */
+class MergeBase {
+
+    /** Reachable from the first commit. */
+    private static final int PARENT1 = 1;
+
+    /** Reachable from the second commit. */
+    private static final int PARENT2 = 2;
+
+    /** Reachable from a common ancestor already found. */
+    private static final int STALE = 4;
+
+    /** Already recorded as a candidate. */
+    private static final int RESULT = 8;
+
+    /** A finder over GRAPH. */
+    MergeBase(CommitGraph graph) {
+        _graph = graph;
+    }
+
+    /** Return the best common ancestors of commits A and B, highest
+     *  generation first. None of the returned commits is an ancestor of
+     *  another. The list is empty iff A and B share no history. */
+    List<String> find(String a, String b) {
+        ArrayList<String> result = new ArrayList<>();
+        if (a.equals(b)) {
+            result.add(a);
+            return result;
+        }
+        List<String> candidates = paint(a, b);
+        for (String c : candidates) {
+            boolean redundant = false;
+            for (String other : candidates) {
+                if (!other.equals(c) && isAncestor(c, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                result.add(c);
+            }
+        }
+        return result;
+    }
+
+    /** Return the best common ancestor of commits A and B, or null if
+     *  they have none. Ties between several best ancestors are broken in
+     *  favor of the most recent. */
+    String best(String a, String b) {
+        List<String> bases = find(a, b);
+        return bases.isEmpty() ? null : bases.get(0);
+    }
+
+    /** Return true iff commit ANCESTOR is reachable from commit
+     *  DESCENDANT. Commits whose generation is below ANCESTOR's cannot
+     *  lead to it and are not walked. */
+    boolean isAncestor(String ancestor, String descendant) {
+        int floor = _graph.generation(ancestor);
+        HashMap<String, Boolean> seen = new HashMap<>();
+        ArrayList<String> work = new ArrayList<>();
+        work.add(descendant);
+        while (!work.isEmpty()) {
+            String c = work.remove(work.size() - 1);
+            if (c.equals(ancestor)) {
+                return true;
+            }
+            if (seen.put(c, true) != null) {
+                continue;
+            }
+            for (String p : _graph.parents(c)) {
+                if (_graph.generation(p) >= floor) {
+                    work.add(p);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Walk down from A and B and return the commits painted from both
+     *  sides that are not stale, highest generation first. */
+    private List<String> paint(String a, String b) {
+        HashMap<String, Integer> flags = new HashMap<>();
+        PriorityQueue<String> queue = new PriorityQueue<>((x, y) -> {
+            int c = Integer.compare(_graph.generation(y),
+                                    _graph.generation(x));
+            if (c == 0) {
+                c = Long.compare(_graph.time(y), _graph.time(x));
+            }
+            return c != 0 ? c : x.compareTo(y);
+        });
+        flags.put(a, PARENT1);
+        flags.put(b, PARENT2);
+        queue.add(a);
+        queue.add(b);
+        int active = 2;
+
+        ArrayList<String> result = new ArrayList<>();
+        while (active > 0) {
+            String c = queue.poll();
+            int f = flags.get(c);
+            if ((f & STALE) == 0) {
+                active -= 1;
+            }
+            int paint = f & (PARENT1 | PARENT2 | STALE);
+            if ((paint & (PARENT1 | PARENT2)) == (PARENT1 | PARENT2)
+                && (f & STALE) == 0) {
+                if ((f & RESULT) == 0) {
+                    flags.put(c, f | RESULT);
+                    result.add(c);
+                }
+                paint |= STALE;
+            }
+            for (String p : _graph.parents(c)) {
+                Integer old = flags.get(p);
+                int pf = old == null ? 0 : old;
+                if ((pf & paint) == paint) {
+                    continue;
+                }
+                boolean wasActive = old != null && (pf & STALE) == 0;
+                pf |= paint;
+                flags.put(p, pf);
+                if (old == null) {
+                    queue.add(p);
+                }
+                boolean isActive = (pf & STALE) == 0;
+                if (wasActive && !isActive) {
+                    active -= 1;
+                } else if (!wasActive && isActive) {
+                    active += 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** The graph searched. */
+    private final CommitGraph _graph;
+}
@@ -0,0 +1,150 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of MergeBase over commit graphs built in memory.
+ *  @author Ellsa Fiorenza
+ */
+public class MergeBaseTest {
+
+    /** Return the UID used for the commit named NAME. */
+    static String id(String name) {
+        return Utils.sha1(name);
+    }
+
+    /** Add commit NAME, made at time TIME, with the commits named PARENTS
+     *  as parents to GRAPH. */
+    static void add(CommitGraph graph, String name, long time,
+                    String... parents) {
+        String[] ids = new String[parents.length];
+        for (int i = 0; i < parents.length; i += 1) {
+            ids[i] = id(parents[i]);
+        }
+        graph.insert(id(name), ids, time);
+    }
+
+    /** Return the UIDs of the commits named NAMES. */
+    static List<String> ids(String... names) {
+        String[] result = new String[names.length];
+        for (int i = 0; i < names.length; i += 1) {
+            result[i] = id(names[i]);
+        }
+        return Arrays.asList(result);
+    }
+
+    @Test
+    public void generations() {
+        CommitGraph g = new CommitGraph();
+        add(g, "r", 1);
+        add(g, "a", 2, "r");
+        add(g, "b", 3, "a");
+        add(g, "c", 4, "r");
+        add(g, "m", 5, "c", "b");
+        assertEquals(1, g.generation(id("r")));
+        assertEquals(3, g.generation(id("b")));
+        assertEquals(2, g.generation(id("c")));
+        assertEquals(4, g.generation(id("m")));
+    }
+
+    @Test
+    public void linear() {
+        CommitGraph g = new CommitGraph();
+        add(g, "r", 1);
+        add(g, "a", 2, "r");
+        add(g, "b", 3, "a");
+        MergeBase mb = new MergeBase(g);
+        assertEquals(id("a"), mb.best(id("a"), id("b")));
+        assertEquals(id("a"), mb.best(id("b"), id("a")));
+        assertEquals(id("b"), mb.best(id("b"), id("b")));
+        assertTrue(mb.isAncestor(id("r"), id("b")));
+        assertFalse(mb.isAncestor(id("b"), id("r")));
+    }
+
+    @Test
+    public void fork() {
+        CommitGraph g = new CommitGraph();
+        add(g, "r", 1);
+        add(g, "s", 2, "r");
+        add(g, "a1", 3, "s");
+        add(g, "a2", 4, "a1");
+        add(g, "b1", 5, "s");
+        assertEquals(ids("s"), new MergeBase(g).find(id("a2"), id("b1")));
+    }
+
+    /** The base of a branch merged into another is found through the
+     *  merge's second parent, which a first-parent walk misses. */
+    @Test
+    public void secondParent() {
+        CommitGraph g = new CommitGraph();
+        add(g, "r", 1);
+        add(g, "a1", 2, "r");
+        add(g, "b1", 3, "r");
+        add(g, "b2", 4, "b1");
+        add(g, "m", 5, "a1", "b1");
+        add(g, "a2", 6, "m");
+        assertEquals(ids("b1"), new MergeBase(g).find(id("a2"), id("b2")));
+    }
+
+    /** Two branches that merged each other have two best common
+     *  ancestors, neither an ancestor of the other, most recent first. */
+    @Test
+    public void crissCross() {
+        CommitGraph g = new CommitGraph();
+        add(g, "r", 1);
+        add(g, "a1", 2, "r");
+        add(g, "b1", 3, "r");
+        add(g, "a2", 4, "a1", "b1");
+        add(g, "b2", 5, "b1", "a1");
+        MergeBase mb = new MergeBase(g);
+        assertEquals(ids("b1", "a1"), mb.find(id("a2"), id("b2")));
+        assertEquals(ids("b1", "a1"), mb.find(id("b2"), id("a2")));
+        assertEquals(id("b1"), mb.best(id("a2"), id("b2")));
+    }
+
+    /** A common ancestor reachable from a better one is not a merge base,
+     *  even when it is reached first along one side. */
+    @Test
+    public void redundant() {
+        CommitGraph g = new CommitGraph();
+        add(g, "r", 1);
+        add(g, "x", 2, "r");
+        add(g, "y", 3, "x");
+        add(g, "z", 4, "y");
+        add(g, "a", 5, "r", "z");
+        add(g, "b", 6, "z");
+        add(g, "c", 7, "x");
+        add(g, "d", 8, "a", "c");
+        assertEquals(ids("z"), new MergeBase(g).find(id("d"), id("b")));
+    }
+
+    /** Bases are ordered highest generation first, whatever their
+     *  times. */
+    @Test
+    public void generationOrder() {
+        CommitGraph g = new CommitGraph();
+        add(g, "r", 9);
+        add(g, "p", 8, "r");
+        add(g, "q", 7, "p");
+        add(g, "s", 6, "r");
+        add(g, "a", 5, "q", "s");
+        add(g, "b", 4, "s", "q");
+        assertEquals(ids("q", "s"), new MergeBase(g).find(id("a"), id("b")));
+    }
+
+    @Test
+    public void unrelated() {
+        CommitGraph g = new CommitGraph();
+        add(g, "r1", 1);
+        add(g, "a", 2, "r1");
+        add(g, "r2", 3);
+        add(g, "b", 4, "r2");
+        MergeBase mb = new MergeBase(g);
+        assertTrue(mb.find(id("a"), id("b")).isEmpty());
+        assertNull(mb.best(id("a"), id("b")));
+    }
+
+}
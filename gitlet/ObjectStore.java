@@ -0,0 +1,516 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/** The content-addressed store holding every commit, directory tree and
+ *  file version of a Gitlet repository. New objects are written loose,
+ *  one file per object, under .gitlet/Commit, .gitlet/Tree and
+ *  .gitlet/Stage; repack folds them into
+ *  a single Pack. Reads look in the pack first and fall back to the loose
+ *  files. Every object is stored encoded by a Codec, compressed by
+ *  default; UIDs are always those of the decoded contents.
+ *  @author Ellsa Fiorenza
+ */
+class ObjectStore {
+
+    /** The repository directory. */
+    static final File GITLET = new File(".gitlet");
+
+    /** Directory of loose commits. */
+    static final File COMMIT_DIR = Utils.join(GITLET, "Commit");
+
+    /** Directory of loose trees. */
+    static final File TREE_DIR = Utils.join(GITLET, "Tree");
+
+    /** Directory of loose file contents (blobs). */
+    static final File BLOB_DIR = Utils.join(GITLET, "Stage");
+
+    /** Longest chain of deltas a blob may be stored at the end of. */
+    static final int MAX_DEPTH = 10;
+
+    /** Largest file, in bytes, that is considered for delta storage;
+     *  larger files are always streamed whole. */
+    static final long MAX_DELTA_SIZE = 1 << 24;
+
+    /** Total size, in bytes, of the delta-base cache. */
+    private static final long BASE_CACHE_SIZE = 1 << 25;
+
+    /** Number of decoded trees kept in the tree cache. */
+    private static final int TREE_CACHE_SIZE = 4096;
+
+    /** The data file of the first pack, and of packs whose index names no
+     *  data file. */
+    static final File PACK_DATA = Utils.join(GITLET, "objects.pack");
+
+    /** The pack index file. */
+    static final File PACK_INDEX = Utils.join(GITLET, "objects.idx");
+
+    /** Return the commit whose UID is ID, or null if there is none. */
+    static Commit readCommit(String id) {
+        byte[] data = read(id, Pack.COMMIT);
+        if (data == null) {
+            return null;
+        }
+        data = Codec.decode(data);
+        if (Commit.isSerialized(data)) {
+            return Utils.deserialize(data, Commit.class);
+        }
+        return Commit.decode(data);
+    }
+
+    /** Return true iff a commit whose UID is ID exists. */
+    static boolean hasCommit(String id) {
+        return contains(id, Pack.COMMIT);
+    }
+
+    /** Store COMMIT under its UID and add it to the commit graph and, if
+     *  it is new, to the CommitLog. The graph is loaded, or built, before
+     *  COMMIT is stored, so that a new repository starts from an empty
+     *  graph. */
+    static void writeCommit(Commit commit) {
+        String id = commit.getCommitID();
+        CommitGraph graph = CommitGraph.get();
+        if (!hasCommit(id)) {
+            install(COMMIT_DIR, id, Codec.current().encode(commit.encode()));
+            CommitLog.add(commit);
+        }
+        graph.add(commit);
+    }
+
+    /** Return the tree whose UID is ID, or null if there is none. Trees
+     *  are immutable, so recently read ones are kept decoded. */
+    static Tree readTree(String id) {
+        Tree result = TREES.get(id);
+        if (result == null) {
+            byte[] data = read(id, Pack.TREE);
+            if (data == null) {
+                return null;
+            }
+            result = Tree.decode(Codec.decode(data));
+            TREES.put(id, result);
+        }
+        return result;
+    }
+
+    /** Store TREE under its UID, unless it is already stored. */
+    static void writeTree(Tree tree) {
+        String id = tree.id();
+        if (TREES.containsKey(id) || contains(id, Pack.TREE)) {
+            return;
+        }
+        if (!TREE_DIR.isDirectory()) {
+            TREE_DIR.mkdir();
+        }
+        install(TREE_DIR, id, Codec.current().encode(tree.encode()));
+        TREES.put(id, tree);
+    }
+
+    /** Return the contents of the blob whose UID is ID, or null if there
+     *  is none. The contents of blobs that deltas were applied to are
+     *  kept in a cache, so reading several versions of a file does not
+     *  replay the same delta chain again and again. */
+    static byte[] readBlob(String id) {
+        byte[] data = read(id, Pack.BLOB);
+        if (data == null) {
+            return null;
+        } else if (!Codec.isDelta(data)) {
+            return Codec.decode(data);
+        }
+        String baseID = Codec.deltaBase(data);
+        byte[] base = BASES.get(baseID);
+        if (base == null) {
+            base = readBlob(baseID);
+            if (base == null) {
+                throw Utils.error("missing delta base %s", baseID);
+            }
+            BASES.put(baseID, base);
+        }
+        return Delta.apply(base, Codec.decode(data));
+    }
+
+    /** Write the contents of the blob whose UID is ID to the file TARGET,
+     *  straight from the pack or loose file holding it; see
+     *  Codec.decode. Only blobs stored as deltas are rebuilt in memory,
+     *  and those are never larger than MAX_DELTA_SIZE. */
+    static void restore(String id, File target) {
+        Pack pack = pack();
+        int pos = pack == null ? -1 : pack.find(id);
+        if (pos >= 0 && pack.type(pos) == Pack.BLOB) {
+            restore(id, pack.channel(), pack.contentsOffset(pos),
+                    pack.length(pos), target);
+            return;
+        }
+        File file = loose(id, Pack.BLOB);
+        if (file == null || !file.isFile()) {
+            if (repacked()) {
+                restore(id, target);
+                return;
+            }
+            throw Utils.error("missing blob %s", id);
+        }
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            restore(id, in, 0, in.size(), target);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the contents of the blob whose UID is ID, stored in the
+     *  LENGTH bytes of IN from START, to TARGET. */
+    private static void restore(String id, FileChannel in, long start,
+                                long length, File target) {
+        ByteBuffer header =
+            ByteBuffer.allocate((int) Math.min(length, Codec.HEADER));
+        try {
+            Utils.readFully(in, header, start);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (Codec.isDelta(header.array())) {
+            Utils.writeContents(target, readBlob(id));
+        } else {
+            Codec.decode(in, start, length, target);
+        }
+    }
+
+    /** Return true iff a blob whose UID is ID exists. */
+    static boolean hasBlob(String id) {
+        return contains(id, Pack.BLOB);
+    }
+
+    /** Store CONTENTS as the blob whose UID is ID. */
+    static void writeBlob(String id, byte[] contents) {
+        if (!hasBlob(id)) {
+            install(BLOB_DIR, id, Codec.current().encode(contents));
+        }
+    }
+
+    /** Store the contents of the file SOURCE as the blob whose UID is ID.
+     *  If BASEID is not null it is the UID of an earlier version of the
+     *  same file, and the blob is stored as a Delta against it when that
+     *  version is in the store, the delta saves at least half the space
+     *  and the delta chain stays no longer than MAX_DEPTH. Otherwise the
+     *  contents are encoded and streamed to a temporary file, never held
+     *  in memory, and the temporary file is renamed into place once
+     *  complete so that no reader sees a partial blob. */
+    static void writeBlob(String id, File source, String baseID) {
+        if (hasBlob(id)) {
+            return;
+        }
+        if (baseID != null && source.length() <= MAX_DELTA_SIZE) {
+            byte[] stored = read(baseID, Pack.BLOB);
+            int depth = stored == null ? 0 : Codec.deltaDepth(stored) + 1;
+            if (stored != null && depth <= MAX_DEPTH) {
+                byte[] contents = Utils.readContents(source);
+                byte[] delta =
+                    Delta.compute(readBlob(baseID), contents);
+                if (delta.length < contents.length / 2) {
+                    install(BLOB_DIR, id, Codec.current()
+                            .encodeDelta(baseID, depth, delta));
+                    return;
+                }
+            }
+        }
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(id, ".tmp", BLOB_DIR);
+            Codec.current().encode(source, tmp);
+            install(BLOB_DIR, id, tmp);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /** Store the encoded object DATA as the loose object in DIR whose UID
+     *  is ID, by way of a temporary file. */
+    private static void install(File dir, String id, byte[] data) {
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(id, ".tmp", dir);
+            Utils.writeContents(tmp, data);
+            install(dir, id, tmp);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /** Rename the complete encoded object TMP to the loose object in DIR
+     *  whose UID is ID. The object is synced along with the others the
+     *  command writes; see Journal. */
+    private static void install(File dir, String id, File tmp)
+        throws IOException {
+        File target = Utils.join(dir, id);
+        Files.move(tmp.toPath(), target.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        Journal.written(target);
+    }
+
+    /** Return the UIDs of all stored commits, in sorted order. */
+    static List<String> commitIDs() {
+        TreeSet<String> result = new TreeSet<>();
+        Pack pack = pack();
+        if (pack != null) {
+            for (int pos = 0; pos < pack.size(); pos += 1) {
+                if (pack.type(pos) == Pack.COMMIT) {
+                    result.add(pack.id(pos));
+                }
+            }
+        }
+        List<String> loose = Utils.plainFilenamesIn(COMMIT_DIR);
+        if (loose != null) {
+            result.addAll(loose);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Append all loose objects to the pack, write its new index, and
+     *  delete the loose copies. The index is replaced atomically, so
+     *  concurrent readers see either the old pack or the new one, and the
+     *  loose copies are only deleted once the new pack is on disk. */
+    static void repack() {
+        Pack old = pack();
+        Pack.Writer writer =
+            new Pack.Writer(old == null ? PACK_DATA : old.data(), old);
+        ArrayList<File> packed = new ArrayList<>();
+        packed.addAll(addLoose(writer, COMMIT_DIR, Pack.COMMIT));
+        packed.addAll(addLoose(writer, TREE_DIR, Pack.TREE));
+        packed.addAll(addLoose(writer, BLOB_DIR, Pack.BLOB));
+        File index = Utils.join(GITLET, "objects.idx.tmp");
+        writer.finish(index);
+        Utils.sync(index);
+        Utils.rename(index, PACK_INDEX);
+        Utils.sync(GITLET);
+        dropPack();
+        for (File f : packed) {
+            f.delete();
+        }
+    }
+
+    /** Write a pack to replace the pack OLD, which must be the current
+     *  pack and hold every object, with a new data file holding only the
+     *  objects at the index positions set in KEEP. Only those objects are
+     *  read. The new index replaces the old one when the command's
+     *  Journal commits, after which retire(OLD) must be called. */
+    static void rewrite(Pack old, BitSet keep) {
+        File data, index;
+        try {
+            data = File.createTempFile("objects-", ".pack", GITLET);
+            index = File.createTempFile("objects", ".idx.tmp", GITLET);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Pack.Writer writer = new Pack.Writer(data, null);
+        for (int pos = keep.nextSetBit(0); pos >= 0;
+             pos = keep.nextSetBit(pos + 1)) {
+            writer.add(old, pos);
+        }
+        writer.finish(index);
+        Journal.renaming(index, PACK_INDEX);
+    }
+
+    /** Close and delete the pack OLD, replaced by rewrite, and forget the
+     *  objects read from it. Readers in other processes that already have
+     *  it open go on reading it, as its file stays readable while open;
+     *  readers that open the index after it was replaced find the new
+     *  data file named in it. */
+    static void retire(Pack old) {
+        dropPack();
+        old.close();
+        TREES.clear();
+        BASES.clear();
+        old.data().delete();
+    }
+
+    /** Delete the pack data files that the pack index does not name,
+     *  left by a gc that crashed before it could delete them. */
+    static void deleteStalePacks() {
+        Pack pack = pack();
+        List<String> names = Utils.plainFilenamesIn(GITLET);
+        if (pack == null || names == null) {
+            return;
+        }
+        for (String name : names) {
+            File f = Utils.join(GITLET, name);
+            if (name.startsWith("objects-") && name.endsWith(".pack")
+                && !f.equals(pack.data())) {
+                f.delete();
+            }
+        }
+    }
+
+    /** Add every loose object in DIR, of type TYPE, to WRITER. Return the
+     *  loose files that are now redundant. */
+    private static List<File> addLoose(Pack.Writer writer, File dir,
+                                       byte type) {
+        ArrayList<File> result = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names == null) {
+            return result;
+        }
+        for (String name : names) {
+            if (name.length() != Utils.UID_LENGTH) {
+                continue;
+            }
+            File f = Utils.join(dir, name);
+            writer.add(name, type, f);
+            result.add(f);
+        }
+        return result;
+    }
+
+    /** Return the contents of the object of type TYPE whose UID is ID, or
+     *  null if there is none. */
+    private static byte[] read(String id, byte type) {
+        Pack pack = pack();
+        if (pack != null) {
+            int pos = pack.find(id);
+            if (pos >= 0 && pack.type(pos) == type) {
+                return pack.read(pos);
+            }
+        }
+        File loose = loose(id, type);
+        if (loose != null && loose.isFile()) {
+            try {
+                return Utils.readContents(loose);
+            } catch (IllegalArgumentException excp) {
+                /* Packed and deleted since isFile; see repacked. */
+            }
+        }
+        return repacked() ? read(id, type) : null;
+    }
+
+    /** Return true iff an object of type TYPE whose UID is ID exists. */
+    private static boolean contains(String id, byte type) {
+        Pack pack = pack();
+        if (pack != null) {
+            int pos = pack.find(id);
+            if (pos >= 0 && pack.type(pos) == type) {
+                return true;
+            }
+        }
+        File loose = loose(id, type);
+        return loose != null && loose.isFile() || repacked()
+            && contains(id, type);
+    }
+
+    /** Return the loose file for the object of type TYPE whose UID is ID,
+     *  or null if ID cannot name an object. */
+    private static File loose(String id, byte type) {
+        if (id == null || id.isEmpty() || id.contains("/")
+            || id.contains(File.separator) || id.startsWith(".")) {
+            return null;
+        }
+        return Utils.join(type == Pack.COMMIT ? COMMIT_DIR
+                          : type == Pack.TREE ? TREE_DIR : BLOB_DIR, id);
+    }
+
+    /** Return the current pack, or null if the repository has none. If
+     *  its data file is missing, the index has been replaced by gc since
+     *  it was opened, and the new one is opened instead. */
+    static synchronized Pack pack() {
+        while (_pack == null && PACK_INDEX.isFile()) {
+            String stamp = stamp();
+            try {
+                _pack = new Pack(PACK_INDEX);
+                _packStamp = stamp;
+            } catch (IllegalArgumentException excp) {
+                if (stamp().equals(stamp)) {
+                    throw excp;
+                }
+            }
+        }
+        return _pack;
+    }
+
+    /** Forget the open pack and return true iff another process has
+     *  replaced its index since it was opened. A reader does not lock the
+     *  repository, so a loose object it is looking for may have been
+     *  packed and deleted in the meantime; it is then worth looking
+     *  again. */
+    private static synchronized boolean repacked() {
+        if (stamp().equals(_packStamp)) {
+            return false;
+        }
+        dropPack();
+        _packStamp = stamp();
+        return true;
+    }
+
+    /** Close and forget the open pack, if any, once its index has been
+     *  replaced. Only commands that change the repository read it from
+     *  several threads, and no other process replaces the index while
+     *  they run, so no thread is still reading it. */
+    private static synchronized void dropPack() {
+        if (_pack != null) {
+            _pack.close();
+            _pack = null;
+        }
+    }
+
+    /** Return something that changes whenever the pack index is
+     *  replaced. */
+    private static String stamp() {
+        return PACK_INDEX.lastModified() + ":" + PACK_INDEX.length();
+    }
+
+    /** The pack last opened by pack(). */
+    private static Pack _pack;
+
+    /** The stamp of the pack index when _pack was opened. */
+    private static String _packStamp = stamp();
+
+    /** Recently used trees, by UID, least recently used first. */
+    private static final Map<String, Tree> TREES =
+        Collections.synchronizedMap(
+            new LinkedHashMap<String, Tree>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                    Map.Entry<String, Tree> eldest) {
+                    return size() > TREE_CACHE_SIZE;
+                }
+            });
+
+    /** Contents of recently used delta bases, by UID, least recently used
+     *  first. */
+    private static final Map<String, byte[]> BASES =
+        Collections.synchronizedMap(
+            new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+                @Override
+                public byte[] put(String id, byte[] contents) {
+                    byte[] old = super.put(id, contents);
+                    _size += contents.length
+                        - (old == null ? 0 : old.length);
+                    Iterator<byte[]> it = values().iterator();
+                    while (_size > BASE_CACHE_SIZE && it.hasNext()) {
+                        _size -= it.next().length;
+                        it.remove();
+                    }
+                    return old;
+                }
+
+                /** Total length of the cached contents. */
+                private long _size;
+            });
+}
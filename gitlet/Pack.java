@@ -0,0 +1,383 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+
+/** A pack of gitlet objects. The data file is append-only and holds one
+ *  (type, length, contents) entry per object. The index file holds one
+ *  fixed-size record (SHA-1 UID, type, data offset) per object, sorted by
+ *  UID, and is memory-mapped so that finding an object is a binary search.
+ *  It ends with the name of its data file, so that an index always comes
+ *  with the data it describes, even while gc is replacing both; indexes
+ *  of the previous version name no data file and go with
+ *  ObjectStore.PACK_DATA.
+ *  @author Ellsa Fiorenza
+ */
+class Pack {
+
+    /** Type of a serialized commit. */
+    static final byte COMMIT = 1;
+
+    /** Type of a file's contents. */
+    static final byte BLOB = 2;
+
+    /** Type of a directory Tree. */
+    static final byte TREE = 3;
+
+    /** Magic number at the start of an index file. */
+    private static final int MAGIC = 0x47504b49;
+
+    /** Version of the index format. */
+    private static final int VERSION = 3;
+
+    /** Version of the index format without the data file name. */
+    private static final int UNNAMED_VERSION = 2;
+
+    /** Size of the index header: magic, version, count. */
+    private static final int HEADER = 12;
+
+    /** Size of one index record: UID, type, offset. */
+    private static final int RECORD = Utils.UID_BYTES + 1 + 8;
+
+    /** Size of the header of one data entry: type, length. */
+    private static final int ENTRY_HEADER = 9;
+
+    /** Open the pack whose index is INDEX. */
+    Pack(File index) {
+        try (FileChannel channel = FileChannel.open(index.toPath(),
+                StandardOpenOption.READ)) {
+            _index = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                 channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_index.capacity() < HEADER || _index.getInt(0) != MAGIC
+            || (_index.getInt(4) != VERSION
+                && _index.getInt(4) != UNNAMED_VERSION)) {
+            throw Utils.error("corrupt pack index %s", index);
+        }
+        _size = _index.getInt(8);
+        if (_index.getInt(4) == UNNAMED_VERSION) {
+            _data = ObjectStore.PACK_DATA;
+        } else {
+            int start = HEADER + _size * RECORD;
+            byte[] name = new byte[_index.getShort(start)];
+            _index.get(start + 2, name);
+            _data = new File(index.getParentFile(),
+                             new String(name, StandardCharsets.UTF_8));
+        }
+        try {
+            _channel = FileChannel.open(_data.toPath(),
+                                        StandardOpenOption.READ);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the data file of this pack. */
+    File data() {
+        return _data;
+    }
+
+    /** Return the number of objects in this pack. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the position in the index of the object whose UID is ID,
+     *  or -1 if this pack does not contain it. */
+    int find(String id) {
+        if (id == null || id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] key;
+        try {
+            key = Utils.uidToBytes(id);
+        } catch (NumberFormatException excp) {
+            return -1;
+        }
+        int lo = 0, hi = _size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(mid, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the UID of the object at index position POS. */
+    String id(int pos) {
+        byte[] raw = new byte[Utils.UID_BYTES];
+        _index.get(HEADER + pos * RECORD, raw);
+        return Utils.bytesToUid(raw, 0);
+    }
+
+    /** Return the type of the object at index position POS. */
+    byte type(int pos) {
+        return _index.get(HEADER + pos * RECORD + Utils.UID_BYTES);
+    }
+
+    /** Return the offset in the data file of the object at index
+     *  position POS. */
+    long offset(int pos) {
+        return _index.getLong(HEADER + pos * RECORD + Utils.UID_BYTES + 1);
+    }
+
+    /** Return a read-only channel on the data file of this pack. It is
+     *  shared, so it must only be read with positional reads, and not
+     *  closed. */
+    FileChannel channel() {
+        return _channel;
+    }
+
+    /** Close the data file of this pack, which must no longer be read.
+     *  The mapped index is released once the pack is garbage collected,
+     *  as a mapping cannot be closed. */
+    void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the offset in the data file of the contents of the object
+     *  at index position POS. */
+    long contentsOffset(int pos) {
+        return offset(pos) + ENTRY_HEADER;
+    }
+
+    /** Return the length of the contents of the object at index position
+     *  POS. */
+    long length(int pos) {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        try {
+            Utils.readFully(_channel, buf, offset(pos) + 1);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return buf.getLong(0);
+    }
+
+    /** Return the first N bytes of the contents of the object at index
+     *  position POS, or all of them if there are fewer. */
+    byte[] head(int pos, int n) {
+        ByteBuffer result = ByteBuffer.allocate((int) Math.min(n, length(pos)));
+        try {
+            Utils.readFully(_channel, result, contentsOffset(pos));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result.array();
+    }
+
+    /** Return the contents of the object at index position POS. */
+    byte[] read(int pos) {
+        long length = length(pos);
+        if (length > Integer.MAX_VALUE) {
+            throw Utils.error("object too large to read into memory");
+        }
+        ByteBuffer result = ByteBuffer.allocate((int) length);
+        try {
+            Utils.readFully(_channel, result, contentsOffset(pos));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result.array();
+    }
+
+    /** Compare the UID of the object at POS with the raw UID KEY,
+     *  returning a negative, zero, or positive value as for compareTo. */
+    private int compare(int pos, byte[] key) {
+        int base = HEADER + pos * RECORD;
+        for (int i = 0; i < key.length; i += 1) {
+            int c = Integer.compare(_index.get(base + i) & 0xff,
+                                    key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Appends objects to a pack's data file and then writes a new index
+     *  covering both the pack's previous objects and the new ones.
+     *  Entries already in the data file are never moved, so an index
+     *  mapped by a concurrent reader stays valid. A writer may also start
+     *  a new data file, with objects copied from an old pack. */
+    static class Writer {
+
+        /** A writer that appends to DATA, which already holds the
+         *  objects of OLD (null if there is no previous pack). */
+        Writer(File data, Pack old) {
+            _entries = new ArrayList<>();
+            _ids = new HashSet<>();
+            try {
+                _data = data;
+                _offset = data.length();
+                _file = new FileOutputStream(data, true);
+                _out = new DataOutputStream(new BufferedOutputStream(_file));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (old != null) {
+                for (int pos = 0; pos < old.size(); pos += 1) {
+                    _entries.add(new Entry(old.id(pos), old.type(pos),
+                                           old.offset(pos)));
+                    _ids.add(old.id(pos));
+                }
+            }
+        }
+
+        /** Append the object with UID ID, type TYPE and contents CONTENTS,
+         *  unless the pack already holds it. Returns true iff it was
+         *  added. */
+        boolean add(String id, byte type, byte[] contents) {
+            if (!_ids.add(id)) {
+                return false;
+            }
+            try {
+                _out.writeByte(type);
+                _out.writeLong(contents.length);
+                _out.write(contents);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            _entries.add(new Entry(id, type, _offset));
+            _offset += ENTRY_HEADER + contents.length;
+            return true;
+        }
+
+        /** Append the object at index position POS of the pack FROM,
+         *  unless the pack already holds it. Its contents are copied from
+         *  file to file without being read into memory. Returns true iff
+         *  it was added. */
+        boolean add(Pack from, int pos) {
+            String id = from.id(pos);
+            if (!_ids.add(id)) {
+                return false;
+            }
+            try {
+                long length = from.length(pos);
+                _out.writeByte(from.type(pos));
+                _out.writeLong(length);
+                _out.flush();
+                Utils.transfer(from.channel(), from.contentsOffset(pos),
+                               length, _file.getChannel());
+                _entries.add(new Entry(id, from.type(pos), _offset));
+                _offset += ENTRY_HEADER + length;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return true;
+        }
+
+        /** Append the object with UID ID, type TYPE and the contents of
+         *  SOURCE, unless the pack already holds it. The contents are
+         *  copied from file to file without being read into memory.
+         *  Returns true iff it was added. */
+        boolean add(String id, byte type, File source) {
+            if (!_ids.add(id)) {
+                return false;
+            }
+            try (FileChannel in = FileChannel.open(source.toPath())) {
+                long length = in.size();
+                _out.writeByte(type);
+                _out.writeLong(length);
+                _out.flush();
+                Utils.transfer(in, 0, length, _file.getChannel());
+                _entries.add(new Entry(id, type, _offset));
+                _offset += ENTRY_HEADER + length;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return true;
+        }
+
+        /** Flush and sync the data file and write the sorted index to
+         *  INDEX. */
+        void finish(File index) {
+            _entries.sort(Comparator.comparing(e -> e.id));
+            byte[] name = _data.getName().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buf = ByteBuffer.allocate(HEADER + _entries.size()
+                                                 * RECORD + 2 + name.length);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(_entries.size());
+            for (Entry e : _entries) {
+                buf.put(Utils.uidToBytes(e.id)).put(e.type).putLong(e.offset);
+            }
+            buf.putShort((short) name.length).put(name);
+            try {
+                _out.flush();
+                _file.getChannel().force(true);
+                _out.close();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            Utils.writeContents(index, buf.array());
+        }
+
+        /** The data file. */
+        private File _data;
+
+        /** UIDs of every object in the new pack. */
+        private HashSet<String> _ids;
+
+        /** Index records for every object in the new pack. */
+        private ArrayList<Entry> _entries;
+
+        /** Offset in the data file of the next entry. */
+        private long _offset;
+
+        /** The data file, opened for appending. */
+        private FileOutputStream _file;
+
+        /** Buffered stream appending to _file. */
+        private DataOutputStream _out;
+    }
+
+    /** One index record. */
+    private static class Entry {
+        /** An entry for object ID of type TYPE at data offset OFFSET. */
+        Entry(String id, byte type, long offset) {
+            this.id = id;
+            this.type = type;
+            this.offset = offset;
+        }
+
+        /** The object's UID. */
+        private final String id;
+        /** The object's type. */
+        private final byte type;
+        /** The object's offset in the data file. */
+        private final long offset;
+    }
+
+    /** The data file. */
+    private final File _data;
+
+    /** Read-only channel on the data file, shared by all readers. */
+    private final FileChannel _channel;
+
+    /** The mapped index file. */
+    private final MappedByteBuffer _index;
+
+    /** Number of objects in the pack. */
+    private final int _size;
+}
@@ -0,0 +1,108 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The branches of a Gitlet repository and which of them is checked out.
+ *  Both are kept in the one file .gitlet/refs: a "HEAD name" line naming
+ *  the current branch, then one "UID name" line per branch, sorted by
+ *  name. The file is only ever replaced whole, so a reader sees a
+ *  consistent snapshot of the branches and HEAD without locking. It is
+ *  read the first time it is needed and written back, by way of the
+ *  Journal, only if it has changed.
+ *  @author Ellsa Fiorenza
+ */
+class Refs {
+
+    /** The refs file. */
+    static final File FILE = Utils.join(ObjectStore.GITLET, "refs");
+
+    /** The current branch file of repositories written before HEAD was
+     *  kept in FILE. It is read if FILE names no current branch. */
+    static final File HEAD = Utils.join(ObjectStore.GITLET, "HEAD");
+
+    /** Return the head commit UIDs of all branches, by name. The map may
+     *  be changed; the changes are written by Commands.save. */
+    HashMap<String, String> branches() {
+        load();
+        return _branches;
+    }
+
+    /** Return the name of the current branch. */
+    String head() {
+        load();
+        return _head;
+    }
+
+    /** Make NAME the current branch. */
+    void setHead(String name) {
+        load();
+        _head = name;
+    }
+
+    /** Add the refs file to UPDATES, with its new contents, for
+     *  Journal.commit, if the branches or HEAD have changed since it was
+     *  read. */
+    void changes(Map<File, byte[]> updates) {
+        if (_branches == null) {
+            return;
+        }
+        byte[] data = encode();
+        if (!Arrays.equals(data, _saved)) {
+            updates.put(FILE, data);
+            _saved = data;
+        }
+    }
+
+    /** Read the refs file, if that has not been done yet. */
+    private void load() {
+        if (_branches != null) {
+            return;
+        }
+        _branches = new HashMap<>();
+        _saved = new byte[0];
+        if (FILE.isFile()) {
+            _saved = Utils.readContents(FILE);
+        }
+        String text = new String(_saved, StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            if (line.startsWith("HEAD ")) {
+                _head = line.substring("HEAD ".length());
+            } else if (line.length() > Utils.UID_LENGTH) {
+                _branches.put(line.substring(Utils.UID_LENGTH + 1),
+                              line.substring(0, Utils.UID_LENGTH));
+            }
+        }
+        if (_head == null && HEAD.isFile()) {
+            _head = Utils.readContentsAsString(HEAD).trim();
+        }
+    }
+
+    /** Return the contents of the refs file for the current branches
+     *  and HEAD. */
+    private byte[] encode() {
+        StringBuilder result = new StringBuilder();
+        if (_head != null) {
+            result.append("HEAD ").append(_head).append('\n');
+        }
+        for (Map.Entry<String, String> e
+                 : new TreeMap<>(_branches).entrySet()) {
+            result.append(e.getValue()).append(' ').append(e.getKey())
+                .append('\n');
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Branches by name, once read. */
+    private HashMap<String, String> _branches;
+
+    /** Name of the current branch, once read. */
+    private String _head;
+
+    /** Contents of the refs file as last read or written. */
+    private byte[] _saved;
+}
@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The staging area of a Gitlet repository: the files added for the next
+ *  commit, with the UIDs of their contents, and the files removed from
+ *  it. It is kept in .gitlet/stage as one line per file, "+UID path" for
+ *  an addition and "-path" for a removal, read the first time it is
+ *  needed and written back, by way of the Journal, only if it has
+ *  changed.
+ *  @author Ellsa Fiorenza
+ */
+class Stage {
+
+    /** The staging file. */
+    static final File FILE = Utils.join(ObjectStore.GITLET, "stage");
+
+    /** Return the UIDs of the staged contents of added files, by path.
+     *  The map may be changed; the changes are written by Commands.save. */
+    HashMap<String, String> added() {
+        load();
+        return _added;
+    }
+
+    /** Return the paths of the files staged for removal. The list may be
+     *  changed; the changes are written by Commands.save. */
+    ArrayList<String> removed() {
+        load();
+        return _removed;
+    }
+
+    /** Unstage everything. */
+    void clear() {
+        added().clear();
+        removed().clear();
+    }
+
+    /** Add the staging file to UPDATES, with its new contents, if the
+     *  staging area has changed since it was read. */
+    void changes(Map<File, byte[]> updates) {
+        if (_added == null) {
+            return;
+        }
+        byte[] data = encode();
+        if (!Arrays.equals(data, _saved)) {
+            updates.put(FILE, data);
+            _saved = data;
+        }
+    }
+
+    /** Read the staging file, if that has not been done yet. */
+    private void load() {
+        if (_added != null) {
+            return;
+        }
+        _added = new HashMap<>();
+        _removed = new ArrayList<>();
+        _saved = new byte[0];
+        if (!FILE.isFile()) {
+            return;
+        }
+        _saved = Utils.readContents(FILE);
+        String text = new String(_saved, StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            if (line.startsWith("+") && line.length() > Utils.UID_LENGTH + 2) {
+                _added.put(line.substring(Utils.UID_LENGTH + 2),
+                           line.substring(1, Utils.UID_LENGTH + 1));
+            } else if (line.startsWith("-")) {
+                _removed.add(line.substring(1));
+            }
+        }
+    }
+
+    /** Return the contents of the staging file for the current staging
+     *  area. */
+    private byte[] encode() {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, String> e : new TreeMap<>(_added).entrySet()) {
+            result.append('+').append(e.getValue()).append(' ')
+                .append(e.getKey()).append('\n');
+        }
+        for (String path : new TreeSet<>(_removed)) {
+            result.append('-').append(path).append('\n');
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Staged additions, once read. */
+    private HashMap<String, String> _added;
+
+    /** Staged removals, once read. */
+    private ArrayList<String> _removed;
+
+    /** Contents of the staging file as last read or written. */
+    private byte[] _saved;
+}
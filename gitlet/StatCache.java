@@ -0,0 +1,213 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/** The stat cache of a Gitlet working directory, kept in .gitlet/index.
+ *  For each file whose contents Gitlet has hashed or written, it records
+ *  the file's size and modification time together with the UID of its
+ *  contents. As long as a file's size and modification time are unchanged
+ *  its UID is taken from the cache instead of reading and hashing the
+ *  file again. Different files may be hashed from several threads at
+ *  once.
+ *  @author Ellsa Fiorenza
+ */
+class StatCache {
+
+    /** The index file. */
+    static final File FILE = Utils.join(ObjectStore.GITLET, "index");
+
+    /** Magic number at the start of the index file. */
+    private static final int MAGIC = 0x47494458;
+
+    /** Modification times closer than this to the time the index is
+     *  written are not trusted. */
+    private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /** Return the stat cache of the current repository, loading it on
+     *  first use. */
+    static StatCache get() {
+        if (_cache == null) {
+            _cache = new StatCache();
+            if (FILE.isFile()) {
+                _cache.load();
+            }
+        }
+        return _cache;
+    }
+
+    /** Return the UID of the contents of the working file NAME, which
+     *  must exist. The file is only read if its size or modification time
+     *  differ from those in the cache. */
+    String hash(String name) {
+        File file = new File(name);
+        Stat stat = stat(file);
+        Entry e = _entries.get(key(name));
+        if (e != null && stat != null && e.size == stat.size
+            && e.mtime == stat.mtime) {
+            return e.id;
+        }
+        String id = Utils.sha1(file);
+        if (stat != null) {
+            put(name, stat, id);
+        }
+        return id;
+    }
+
+    /** Record that the working file NAME was just written with the
+     *  contents whose UID is ID. */
+    void record(String name, String id) {
+        Stat stat = stat(new File(name));
+        if (stat == null) {
+            forget(name);
+        } else {
+            put(name, stat, id);
+        }
+    }
+
+    /** Forget the working file NAME, e.g. because it was deleted. */
+    void forget(String name) {
+        if (_entries.remove(key(name)) != null) {
+            _dirty = true;
+        }
+    }
+
+    /** Write the cache back to the index file if it has changed. Entries
+     *  for files modified within RACY_NANOS of now are written with an
+     *  impossible size, since such a file may change again without its
+     *  modification time changing, and must be rehashed next time. Only
+     *  commands that lock the repository save the cache; the file is
+     *  replaced by rename, so that commands that only read see either
+     *  the old cache or the new one. */
+    void save() {
+        if (!_dirty) {
+            return;
+        }
+        long racy = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())
+            - RACY_NANOS;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().mtime >= racy
+                              ? -1 : e.getValue().size);
+                out.writeLong(e.getValue().mtime);
+                out.write(Utils.uidToBytes(e.getValue().id));
+            }
+            out.close();
+            File tmp = File.createTempFile("index", ".tmp",
+                                           ObjectStore.GITLET);
+            Utils.writeContents(tmp, bytes.toByteArray());
+            Utils.rename(tmp, FILE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _dirty = false;
+    }
+
+    /** Read the index file. A file that is unreadable is treated as an
+     *  empty cache, since every entry can be recomputed. */
+    private void load() {
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(Utils.readContents(FILE)))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            byte[] raw = new byte[Utils.UID_BYTES];
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String name = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                in.readFully(raw);
+                _entries.put(name,
+                             new Entry(size, mtime, Utils.bytesToUid(raw, 0)));
+            }
+        } catch (EOFException excp) {
+            _entries.clear();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Cache ID as the UID of the file NAME, whose current status is
+     *  STAT. */
+    private void put(String name, Stat stat, String id) {
+        Entry old = _entries.put(key(name), new Entry(stat.size, stat.mtime,
+                                                      id));
+        if (old == null || old.size != stat.size || old.mtime != stat.mtime
+            || !old.id.equals(id)) {
+            _dirty = true;
+        }
+    }
+
+    /** Return the key under which the file NAME is cached. */
+    private static String key(String name) {
+        return new File(name).getPath();
+    }
+
+    /** Return the size and modification time of FILE, or null if it is
+     *  not a plain file. */
+    private static Stat stat(File file) {
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            return new Stat(attrs.size(),
+                            attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Size and modification time of a file. */
+    private static class Stat {
+        /** Status of a file of SIZE bytes last modified at MTIME. */
+        Stat(long size, long mtime) {
+            this.size = size;
+            this.mtime = mtime;
+        }
+
+        /** Size in bytes. */
+        protected final long size;
+        /** Modification time in nanoseconds. */
+        protected final long mtime;
+    }
+
+    /** A cached file status and UID. */
+    private static class Entry extends Stat {
+        /** An entry for a file of SIZE bytes last modified at MTIME whose
+         *  contents have UID ID. */
+        Entry(long size, long mtime, String id) {
+            super(size, mtime);
+            this.id = id;
+        }
+
+        /** UID of the contents. */
+        private final String id;
+    }
+
+    /** Cached entries, by file name. Files may be hashed concurrently. */
+    private final ConcurrentHashMap<String, Entry> _entries =
+        new ConcurrentHashMap<>();
+
+    /** True iff the entries differ from the index file. */
+    private volatile boolean _dirty;
+
+    /** The cache returned by get(). */
+    private static StatCache _cache;
+}
@@ -0,0 +1,236 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** A directory in a commit's snapshot. A tree maps the names of the
+ *  files and subdirectories in one directory to the UIDs of their blobs
+ *  and trees, and is itself stored in the ObjectStore under the UID of its
+ *  encoding. Two commits that agree on a directory therefore share its
+ *  tree, and making a commit only writes the trees along changed paths.
+ *  Trees are immutable.
+ *  @author Ellsa Fiorenza
+ */
+class Tree {
+
+    /** Separator of the components of a path. */
+    static final char SEPARATOR = '/';
+
+    /** An empty tree. */
+    private Tree() {
+        _entries = new TreeMap<>();
+    }
+
+    /** A tree with entries ENTRIES, which it takes over. */
+    private Tree(TreeMap<String, Entry> entries) {
+        _entries = entries;
+    }
+
+    /** Return the tree whose UID is ID. */
+    static Tree read(String id) {
+        Tree result = ObjectStore.readTree(id);
+        if (result == null) {
+            throw Utils.error("missing tree %s", id);
+        }
+        return result;
+    }
+
+    /** Return the entries of this tree, sorted by name. */
+    SortedMap<String, Entry> entries() {
+        return Collections.unmodifiableSortedMap(_entries);
+    }
+
+    /** Return the UID of this tree. */
+    String id() {
+        if (_id == null) {
+            _id = Utils.sha1("tree ", encode());
+        }
+        return _id;
+    }
+
+    /** Return the tree resulting from applying CHANGES to the tree whose
+     *  UID is ROOT (null for an empty tree), and store every new tree.
+     *  CHANGES maps paths to the UIDs of their new blobs, or to null for
+     *  paths to remove. Subtrees with no changed paths are reused as they
+     *  are. Return the UID of the result, or null if it is empty. */
+    static String update(String root, Map<String, String> changes) {
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        if (root != null) {
+            entries.putAll(read(root)._entries);
+        }
+        HashMap<String, HashMap<String, String>> groups = new HashMap<>();
+        for (Map.Entry<String, String> c : changes.entrySet()) {
+            String path = c.getKey();
+            int k = path.indexOf(SEPARATOR);
+            if (k < 0) {
+                if (c.getValue() == null) {
+                    entries.remove(path);
+                } else {
+                    entries.put(path, new Entry(false, c.getValue()));
+                }
+            } else {
+                groups.computeIfAbsent(path.substring(0, k),
+                                       d -> new HashMap<>())
+                    .put(path.substring(k + 1), c.getValue());
+            }
+        }
+        for (Map.Entry<String, HashMap<String, String>> g
+                 : groups.entrySet()) {
+            Entry old = entries.get(g.getKey());
+            String sub = update(old != null && old.isTree() ? old.id() : null,
+                                g.getValue());
+            if (sub == null) {
+                entries.remove(g.getKey());
+            } else {
+                entries.put(g.getKey(), new Entry(true, sub));
+            }
+        }
+        if (entries.isEmpty()) {
+            return null;
+        }
+        Tree result = new Tree(entries);
+        ObjectStore.writeTree(result);
+        return result.id();
+    }
+
+    /** Return a map from the path of every file in the tree whose UID is
+     *  ROOT to the UID of its blob. ROOT may be null, for an empty tree. */
+    static HashMap<String, String> flatten(String root) {
+        HashMap<String, String> result = new HashMap<>();
+        if (root == null) {
+            return result;
+        }
+        ArrayDeque<String[]> work = new ArrayDeque<>();
+        work.push(new String[] { "", root });
+        while (!work.isEmpty()) {
+            String[] dir = work.pop();
+            for (Map.Entry<String, Entry> e
+                     : read(dir[1])._entries.entrySet()) {
+                String path = dir[0] + e.getKey();
+                if (e.getValue().isTree()) {
+                    work.push(new String[] { path + SEPARATOR,
+                                             e.getValue().id() });
+                } else {
+                    result.put(path, e.getValue().id());
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the UID of the blob or tree at PATH in the tree whose UID is
+     *  ROOT, or null if there is none. Only the trees along PATH are
+     *  read. */
+    static String lookup(String root, String path) {
+        Entry e = entry(root, path);
+        return e == null ? null : e.id();
+    }
+
+    /** Return the UID of the file at PATH in the tree whose UID is ROOT
+     *  (null for an empty tree), or null if there is none. Only the trees
+     *  along PATH are read. */
+    static String lookupFile(String root, String path) {
+        Entry e = entry(root, path);
+        return e == null || e.isTree() ? null : e.id();
+    }
+
+    /** Return the entry for PATH in the tree whose UID is ROOT, or null
+     *  if there is none. */
+    private static Entry entry(String root, String path) {
+        String id = root;
+        int start = 0;
+        while (id != null) {
+            int k = path.indexOf(SEPARATOR, start);
+            String name = k < 0 ? path.substring(start)
+                : path.substring(start, k);
+            Entry e = read(id)._entries.get(name);
+            if (e == null || k < 0) {
+                return e;
+            } else if (!e.isTree()) {
+                return null;
+            }
+            id = e.id();
+            start = k + 1;
+        }
+        return null;
+    }
+
+    /** Return the encoding of this tree: for each entry in name order, a
+     *  kind byte, the name as length and UTF-8 bytes, and the raw UID. */
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                byte[] name = e.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeByte(e.getValue().isTree() ? TREE : FILE);
+                out.writeShort(name.length);
+                out.write(name);
+                out.write(Utils.uidToBytes(e.getValue().id()));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return the tree encoded in DATA. */
+    static Tree decode(byte[] data) {
+        Tree result = new Tree();
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        byte[] raw = new byte[Utils.UID_BYTES];
+        while (buf.hasRemaining()) {
+            boolean isTree = buf.get() == TREE;
+            byte[] name = new byte[buf.getShort() & 0xffff];
+            buf.get(name);
+            buf.get(raw);
+            result._entries.put(new String(name, StandardCharsets.UTF_8),
+                                new Entry(isTree, Utils.bytesToUid(raw, 0)));
+        }
+        return result;
+    }
+
+    /** One named entry of a tree. */
+    static class Entry {
+        /** An entry for the tree (if ISTREE) or blob with UID ID. */
+        Entry(boolean isTree, String id) {
+            _isTree = isTree;
+            _id = id;
+        }
+
+        /** Return true iff this entry is a subdirectory. */
+        boolean isTree() {
+            return _isTree;
+        }
+
+        /** Return the UID of this entry's tree or blob. */
+        String id() {
+            return _id;
+        }
+
+        /** True iff a subdirectory. */
+        private final boolean _isTree;
+        /** UID of the tree or blob. */
+        private final String _id;
+    }
+
+    /** Kind byte of a file entry. */
+    private static final byte FILE = 0;
+
+    /** Kind byte of a subdirectory entry. */
+    private static final byte TREE = 1;
+
+    /** Entries by name. */
+    private final TreeMap<String, Entry> _entries;
+
+    /** UID, once computed. */
+    private String _id;
+}
@@ -0,0 +1,152 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** Two- and three-way comparison of Trees. For merge, the split point,
+ *  current and given trees are walked together, one directory at a time,
+ *  with the entries of each directory visited in sorted lockstep. A
+ *  directory is not entered when the current and given sides have the
+ *  same tree there, or when the given side left it as it was at the split
+ *  point, since nothing under it can need merging; the cost of a merge is
+ *  therefore proportional to what changed, not to the size of the
+ *  snapshots.
+ *  @author Ellsa Fiorenza
+ */
+class TreeDiff {
+
+    /** Return the paths that need merging when the tree GIVEN is merged
+     *  into the tree CURRENT, whose common ancestor has tree SPLIT, sorted
+     *  by path. Any of the three may be null, for an empty tree. A path
+     *  needs merging iff the given side changed it since the split point
+     *  and the current side does not already agree with the given one. */
+    static List<Change> merge(String split, String current, String given) {
+        ArrayList<Change> result = new ArrayList<>();
+        merge("", split, current, given, result);
+        return result;
+    }
+
+    /** Return the paths whose contents differ between the trees FROM and
+     *  TO, either of which may be null, sorted by path. Each change has
+     *  FROM's UID as its split and current UIDs and TO's as its given
+     *  UID; directories that are the same on both sides are skipped. */
+    static List<Change> diff(String from, String to) {
+        return merge(from, from, to);
+    }
+
+    /** Add the changes needing merging under the directory PREFIX, whose
+     *  trees are SPLIT, CURRENT and GIVEN, to RESULT. */
+    private static void merge(String prefix, String split, String current,
+                              String given, List<Change> result) {
+        if (Objects.equals(current, given) || Objects.equals(split, given)) {
+            return;
+        }
+        Tree.Entry[] s = entries(split), c = entries(current),
+            g = entries(given);
+        String[] sn = names(split), cn = names(current), gn = names(given);
+        int i = 0, j = 0, k = 0;
+        while (i < s.length || j < c.length || k < g.length) {
+            String name = min(min(at(sn, i), at(cn, j)), at(gn, k));
+            Tree.Entry se = name.equals(at(sn, i)) ? s[i++] : null;
+            Tree.Entry ce = name.equals(at(cn, j)) ? c[j++] : null;
+            Tree.Entry ge = name.equals(at(gn, k)) ? g[k++] : null;
+            String path = prefix + name;
+            String sf = file(se), cf = file(ce), gf = file(ge);
+            if (!Objects.equals(cf, gf) && !Objects.equals(sf, gf)) {
+                result.add(new Change(path, sf, cf, gf));
+            }
+            merge(path + Tree.SEPARATOR, tree(se), tree(ce), tree(ge),
+                  result);
+        }
+    }
+
+    /** Return the entries of the tree whose UID is ID, in name order. ID
+     *  may be null, for an empty tree. */
+    private static Tree.Entry[] entries(String id) {
+        return entryMap(id).values().toArray(new Tree.Entry[0]);
+    }
+
+    /** Return the names of the entries of the tree whose UID is ID, in
+     *  order. */
+    private static String[] names(String id) {
+        return entryMap(id).keySet().toArray(new String[0]);
+    }
+
+    /** Return the entries of the tree whose UID is ID by name. */
+    private static SortedMap<String, Tree.Entry> entryMap(String id) {
+        return id == null ? new TreeMap<>() : Tree.read(id).entries();
+    }
+
+    /** Return NAMES[I], or null if I is past the end. */
+    private static String at(String[] names, int i) {
+        return i < names.length ? names[i] : null;
+    }
+
+    /** Return the lesser of A and B, where null is greatest. */
+    private static String min(String a, String b) {
+        return a == null || (b != null && b.compareTo(a) < 0) ? b : a;
+    }
+
+    /** Return the blob UID of E, or null if E is missing or a tree. */
+    private static String file(Tree.Entry e) {
+        return e == null || e.isTree() ? null : e.id();
+    }
+
+    /** Return the tree UID of E, or null if E is missing or a file. */
+    private static String tree(Tree.Entry e) {
+        return e == null || !e.isTree() ? null : e.id();
+    }
+
+    /** A path that needs merging, with the UIDs of its contents at the
+     *  split point and on the current and given sides. A UID is null
+     *  where the file does not exist. */
+    static class Change {
+        /** A change to PATH, which is SPLIT at the split point, CURRENT on
+         *  the current side and GIVEN on the given side. */
+        Change(String path, String split, String current, String given) {
+            _path = path;
+            _split = split;
+            _current = current;
+            _given = given;
+        }
+
+        /** Return the path of the file. */
+        String path() {
+            return _path;
+        }
+
+        /** Return the UID at the split point. */
+        String split() {
+            return _split;
+        }
+
+        /** Return the UID on the current side. */
+        String current() {
+            return _current;
+        }
+
+        /** Return the UID on the given side. */
+        String given() {
+            return _given;
+        }
+
+        /** Return true iff both sides changed the file, differently.
+         *  Otherwise only the given side changed it and its version is
+         *  taken. */
+        boolean isConflict() {
+            return !Objects.equals(_split, _current);
+        }
+
+        /** Path of the file. */
+        private final String _path;
+        /** UID at the split point. */
+        private final String _split;
+        /** UID on the current side. */
+        private final String _current;
+        /** UID on the given side. */
+        private final String _given;
+    }
+}
@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/** Writes the differences between two versions of a file in unified
+ *  diff format. Output goes straight to a writer, one line at a time, so
+ *  the text of a diff is never assembled in memory.
+ *  @author Ellsa Fiorenza
+ */
+class UnifiedDiff {
+
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Write the differences between the versions OLD and NOW of the file
+     *  PATH to OUT. Either version may be null, for a file that does not
+     *  exist on that side. */
+    static void write(PrintWriter out, String path, byte[] old, byte[] now) {
+        out.println("diff --gitlet a/" + path + " b/" + path);
+        if (isBinary(old) || isBinary(now)) {
+            out.println("Binary files " + name("a/", path, old) + " and "
+                        + name("b/", path, now) + " differ");
+            return;
+        }
+        out.println("--- " + name("a/", path, old));
+        out.println("+++ " + name("b/", path, now));
+        String[] a = Diff.lines(text(old)), b = Diff.lines(text(now));
+        List<Diff.Hunk> hunks = Diff.diff(a, b);
+        int i = 0;
+        while (i < hunks.size()) {
+            int j = i;
+            while (j + 1 < hunks.size() && hunks.get(j + 1).aStart()
+                   - hunks.get(j).aEnd() <= 2 * CONTEXT) {
+                j += 1;
+            }
+            Diff.Hunk first = hunks.get(i), last = hunks.get(j);
+            int aStart = Math.max(0, first.aStart() - CONTEXT);
+            int bStart = first.bStart() - (first.aStart() - aStart);
+            int aEnd = Math.min(a.length, last.aEnd() + CONTEXT);
+            int bEnd = last.bEnd() + (aEnd - last.aEnd());
+            out.println("@@ -" + range(aStart, aEnd) + " +"
+                        + range(bStart, bEnd) + " @@");
+            int pos = aStart;
+            for (Diff.Hunk h : hunks.subList(i, j + 1)) {
+                lines(out, ' ', a, pos, h.aStart());
+                lines(out, '-', a, h.aStart(), h.aEnd());
+                lines(out, '+', b, h.bStart(), h.bEnd());
+                pos = h.aEnd();
+            }
+            lines(out, ' ', a, pos, aEnd);
+            i = j + 1;
+        }
+    }
+
+    /** Write LINES[FROM .. TO-1] to OUT, each preceded by PREFIX. */
+    private static void lines(PrintWriter out, char prefix, String[] lines,
+                              int from, int to) {
+        for (int k = from; k < to; k += 1) {
+            out.print(prefix);
+            out.print(lines[k]);
+            if (!lines[k].endsWith("\n")) {
+                out.println();
+                out.println("\\ No newline at end of file");
+            }
+        }
+    }
+
+    /** Return the unified diff range of lines [START, END). */
+    private static String range(int start, int end) {
+        if (end == start) {
+            return start + ",0";
+        } else if (end == start + 1) {
+            return Integer.toString(start + 1);
+        }
+        return (start + 1) + "," + (end - start);
+    }
+
+    /** Return the name of PATH, prefixed by SIDE, or /dev/null if
+     *  CONTENTS is null. */
+    private static String name(String side, String path, byte[] contents) {
+        return contents == null ? "/dev/null" : side + path;
+    }
+
+    /** Return CONTENTS as text, which is empty if CONTENTS is null. */
+    private static String text(byte[] contents) {
+        return contents == null ? ""
+            : new String(contents, StandardCharsets.UTF_8);
+    }
+
+    /** Return true iff CONTENTS is not null and contains a NUL byte. */
+    private static boolean isBinary(byte[] contents) {
+        if (contents != null) {
+            for (byte b : contents) {
+                if (b == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
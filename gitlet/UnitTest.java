@@ -0,0 +1,20 @@
+package gitlet;
+
+import ucb.junit.textui;
+
+/** The suite of all JUnit tests for the gitlet package.
+ *  @author Ellsa Fiorenza
+ */
+public class UnitTest {
+
+    /** Run the JUnit tests in the gitlet package. Add xxxTest.class
+     *  entries to the arguments of runClasses to run other JUnit tests. */
+    public static void main(String[] ignored) {
+        System.exit(textui.runClasses(MergeBaseTest.class,
+                                      CodecTest.class,
+                                      DiffTest.class,
+                                      BloomFilterTest.class,
+                                      CrashTest.class));
+    }
+
+}
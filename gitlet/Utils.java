@@ -1,16 +1,24 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -59,6 +67,61 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Size of the buffer used to read files in pieces. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Returns the SHA-1 hash of the contents of FILE, which is read
+     *  through a buffer of BUFFER_SIZE bytes so that memory use does not
+     *  depend on the size of FILE.  Throws IllegalArgumentException in
+     *  case of problems. */
+    static String sha1(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            return result.toString();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** The length of a complete SHA-1 UID in bytes. */
+    static final int UID_BYTES = UID_LENGTH / 2;
+
+    /** Returns the UID_BYTES raw bytes of the hexadecimal SHA-1 UID ID. */
+    static byte[] uidToBytes(String id) {
+        if (id.length() != UID_LENGTH) {
+            throw new IllegalArgumentException("not a full SHA-1 UID");
+        }
+        byte[] result = new byte[UID_BYTES];
+        for (int i = 0; i < UID_BYTES; i += 1) {
+            result[i] = (byte) Integer.parseInt(id.substring(2 * i,
+                                                             2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Returns the hexadecimal SHA-1 UID whose raw bytes are
+     *  BYTES[START .. START + UID_BYTES - 1]. */
+    static String bytesToUid(byte[] bytes, int start) {
+        StringBuilder result = new StringBuilder(UID_LENGTH);
+        for (int i = start; i < start + UID_BYTES; i += 1) {
+            result.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+            result.append(Character.forDigit(bytes[i] & 0xf, 16));
+        }
+        return result.toString();
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -132,6 +195,128 @@ class Utils {
         }
     }
 
+    /** Write CONTENTS to FILE as writeContents does, but by way of a
+     *  temporary file in the same directory that is synced and then
+     *  renamed over FILE, so that neither a reader nor a crash ever
+     *  leaves FILE partly written. The rename itself is durable once the
+     *  directory is synced. */
+    static void writeAtomically(File file, byte[] contents) {
+        File tmp;
+        try {
+            tmp = File.createTempFile(file.getName(), ".tmp",
+                                      file.getAbsoluteFile().getParentFile());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        writeContents(tmp, contents);
+        sync(tmp);
+        rename(tmp, file);
+    }
+
+    /** Atomically replace TO by FROM. */
+    static void rename(File from, File to) {
+        crashPoint();
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            from.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Mark a point at which a crash would leave the repository partly
+     *  updated. If the system property gitlet.crash is N, the process
+     *  halts at the Nth such point it reaches, with no cleanup, as if it
+     *  had crashed there, so that tests can check that a crash at each
+     *  point is recovered from. */
+    static void crashPoint() {
+        if (CRASH_POINT > 0 && ++_crashPoints == CRASH_POINT) {
+            Runtime.getRuntime().halt(CRASH_STATUS);
+        }
+    }
+
+    /** Exit status of a process halted by crashPoint. */
+    static final int CRASH_STATUS = 99;
+
+    /** The crash point at which to halt, or 0 for none. */
+    private static final int CRASH_POINT =
+        Integer.getInteger("gitlet.crash", 0);
+
+    /** Number of crash points reached. */
+    private static int _crashPoints;
+
+    /** Force the contents of FILE, which may be a directory, to the disk.
+     *  Some systems cannot sync directories; there, renames are as
+     *  durable as the system makes them. */
+    static void sync(File file) {
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Fill BUF with the bytes of IN starting at POSITION. */
+    static void readFully(FileChannel in, ByteBuffer buf, long position)
+        throws IOException {
+        while (buf.hasRemaining()) {
+            if (in.read(buf, position + buf.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    /** Return a stream of the LENGTH bytes of IN starting at POSITION.
+     *  It only uses positional reads, so several threads may each have
+     *  one open on the same channel. */
+    static InputStream inputStream(FileChannel in, long position,
+                                   long length) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                long left = length - _done;
+                if (left <= 0) {
+                    return -1;
+                }
+                ByteBuffer buf =
+                    ByteBuffer.wrap(b, off, (int) Math.min(len, left));
+                int n = in.read(buf, position + _done);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                _done += n;
+                return n;
+            }
+
+            /** Number of bytes read so far. */
+            private long _done;
+        };
+    }
+
+    /** Transfer the LENGTH bytes of IN starting at POSITION to OUT. */
+    static void transfer(FileChannel in, long position, long length,
+                         WritableByteChannel out) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long n = in.transferTo(position + done, length - done, out);
+            if (n <= 0 && in.size() <= position + done) {
+                throw new IOException("file shrank while being copied");
+            }
+            done += n;
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -216,6 +401,23 @@ class Utils {
         }
     }
 
+    /** Return an object of type T read from the serialized BYTES, casting
+     *  it to EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */
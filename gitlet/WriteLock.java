@@ -0,0 +1,64 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+/** The lock on a repository held by a process that changes it. Only one
+ *  process at a time may hold it; others wait. Processes that only read
+ *  do not take it: objects are never changed once written, and the
+ *  files naming them are only ever replaced whole, by rename, so a
+ *  reader always sees either the old state or the new one. The lock is
+ *  an operating-system lock on .gitlet/lock, so it is released even if
+ *  its holder dies.
+ *  @author Ellsa Fiorenza
+ */
+class WriteLock {
+
+    /** The lock file. */
+    static final File FILE = Utils.join(ObjectStore.GITLET, "lock");
+
+    /** Wait until this process holds the lock. Return true iff it did
+     *  not hold it already. */
+    static synchronized boolean acquire() {
+        if (_lock != null) {
+            return false;
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(FILE.toPath(),
+                                       StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE);
+            _lock = channel.lock();
+            return true;
+        } catch (IOException excp) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    /* Nothing more can be done. */
+                }
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Release the lock, if this process holds it. */
+    static synchronized void release() {
+        if (_lock == null) {
+            return;
+        }
+        try {
+            _lock.acquiredBy().close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            _lock = null;
+        }
+    }
+
+    /** The lock, while this process holds it. */
+    private static FileLock _lock;
+}